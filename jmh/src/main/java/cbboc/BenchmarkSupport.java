@@ -0,0 +1,51 @@
+package cbboc;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Shared fixtures for the benchmarks, which are expected to be run from the project root 
+ * (so that resources/ can be found via user.dir). Everything random is derived from SEED.
+ */
+
+final class BenchmarkSupport {
+	
+	static final long SEED = 20160422L;
+	
+	private BenchmarkSupport() {}
+	
+	///////////////////////////////
+	
+	static String problemClassPath( String problemClass ) {
+		return System.getProperty( "user.dir" ) + "/resources/" + problemClass;
+	}
+	
+	static ProblemInstance loadInstance( String problemClass, String relativePath ) throws IOException {
+		FileInputStream is = new FileInputStream( problemClassPath( problemClass ) + "/" + relativePath );
+		try {
+			return new ProblemInstance( is );
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	static ProblemInstance loadFirstTestingInstance( String problemClass ) throws IOException {
+		return loadInstance( problemClass, "testing/00000.txt" );
+	}
+	
+	static boolean [][] randomCandidates( int numCandidates, int numGenes ) {
+		Random random = new Random( SEED );
+		boolean [][] result = new boolean [ numCandidates ][ numGenes ];
+		for( boolean [] candidate : result )
+			for( int i=0; i<candidate.length; ++i )
+				candidate[ i ] = random.nextBoolean();
+		
+		return result;
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,110 @@
+package cbboc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cbboc.examples.NAHCCompetitor;
+import cbboc.examples.RandomCompetitor;
+import cbboc.examples.SAHHCompetitor;
+import cbboc.util.RNG;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * A complete test() run of each example competitor on one testing instance, 
+ * with a fixed evaluation budget and no deadline. 
+ * Divide the average time by the budget for the cost per evaluation.
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class CompetitorBenchmark {
+
+	private static final int NUM_SAHH_TRAINING_INSTANCES = 5;
+	private static final long SAHH_TRAINING_EVALUATIONS_PER_INSTANCE = 10000;
+	
+	@Param( { "sample1", "sample2", "sample3", "sample4" } )
+	public String problemClass;
+
+	@Param( { "100000" } )
+	public long evaluationBudget;
+	
+	private ProblemInstance instance;
+	private NAHCCompetitor nahc;
+	private RandomCompetitor random;
+	private SAHHCompetitor sahh;
+	
+	///////////////////////////////
+	
+	@Setup( Level.Trial )
+	public void setup() throws IOException {
+		instance = BenchmarkSupport.loadFirstTestingInstance( problemClass );
+		nahc = new NAHCCompetitor();
+		random = new RandomCompetitor();
+		
+		// SAHH is tested with temperature bounds learned from a few training instances:
+		RNG.setSeed( BenchmarkSupport.SEED );
+		sahh = new SAHHCompetitor( TrainingCategory.SHORT );
+		AtomicLong sharedTrainingEvaluations = new AtomicLong( NUM_SAHH_TRAINING_INSTANCES * SAHH_TRAINING_EVALUATIONS_PER_INSTANCE );
+		List< ObjectiveFn > trainingSet = new ArrayList< ObjectiveFn >();
+		for( int i=0; i<NUM_SAHH_TRAINING_INSTANCES; ++i )
+			trainingSet.add( new ObjectiveFn( BenchmarkSupport.loadInstance( problemClass, String.format( "training/%05d.txt", i ) ), 
+				ObjectiveFn.TimingMode.UNTIMED, sharedTrainingEvaluations ) );
+		sahh.train( trainingSet, Long.MAX_VALUE );
+	}
+
+	@Setup( Level.Invocation )
+	public void reseed() {
+		RNG.setSeed( BenchmarkSupport.SEED );
+	}
+	
+	///////////////////////////////
+	
+	private double run( Competitor competitor ) {
+		ObjectiveFn fn = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( evaluationBudget ) );
+		try {
+			competitor.test( fn, Long.MAX_VALUE );
+		}
+		catch( CBBOC.EvaluationsExceededException ex ) {
+			// Intentionally Empty
+		}
+		return fn.getRemainingEvaluationsAtBestValue().getRight();
+	}
+	
+	@Benchmark
+	public double nahc() {
+		return run( nahc );
+	}
+	
+	@Benchmark
+	public double random() {
+		return run( random );
+	}
+
+	@Benchmark
+	public double sahh() {
+		return run( sahh );
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
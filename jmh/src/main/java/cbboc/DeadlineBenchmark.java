@@ -0,0 +1,110 @@
+package cbboc;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Cost of the per-evaluation deadline check: the previous System.currentTimeMillis() 
+ * comparison versus the timer-driven Deadline flag, around both a full evaluation 
+ * and an incremental (single flip) one.
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class DeadlineBenchmark {
+
+	private static final int NUM_CANDIDATES = 64;
+	
+	@Param( { "sample2", "sample3" } )
+	public String problemClass;
+	
+	private ProblemInstance instance;
+	private ObjectiveFn fn;
+	private boolean [][] candidates;
+	private int [] fnTableIndices;
+	private long endTime;
+	private Deadline deadline;
+	private int nextCandidate, nextVariable;
+	
+	///////////////////////////////
+	
+	@Setup
+	public void setup() throws IOException {
+		instance = BenchmarkSupport.loadFirstTestingInstance( problemClass );
+		candidates = BenchmarkSupport.randomCandidates( NUM_CANDIDATES, instance.getNumGenes() );
+		
+		fnTableIndices = new int [ instance.getNumSubfunctions() ];
+		instance.value( candidates[ 0 ], fnTableIndices );
+		
+		endTime = System.currentTimeMillis() + TimeUnit.HOURS.toMillis( 1 );
+		deadline = Deadline.startWallClock( TimeUnit.HOURS.toMillis( 1 ) );
+		fn = new ObjectiveFn( instance, ObjectiveFn.TimingMode.TESTING, new AtomicLong( Long.MAX_VALUE ) );
+		fn.startDeadline( deadline );
+	}
+	
+	private boolean [] nextCandidate() {
+		nextCandidate = ( nextCandidate + 1 ) & ( NUM_CANDIDATES - 1 );
+		return candidates[ nextCandidate ];
+	}
+	
+	private int nextVariable() {
+		nextVariable = nextVariable + 1 == instance.getNumGenes() ? 0 : nextVariable + 1;
+		return nextVariable;
+	}
+	
+	///////////////////////////////
+	
+	@Benchmark
+	public double fullEvaluationWithClockCheck() {
+		if( System.currentTimeMillis() > endTime )
+			throw new CBBOC.TimeExceededException();
+		return instance.value( nextCandidate() );
+	}
+	
+	@Benchmark
+	public double fullEvaluationWithDeadlineFlag() {
+		if( deadline.hasExpired() )
+			throw new CBBOC.TimeExceededException();
+		return instance.value( nextCandidate() );
+	}
+	
+	@Benchmark
+	public double flipDeltaWithClockCheck() {
+		if( System.currentTimeMillis() > endTime )
+			throw new CBBOC.TimeExceededException();
+		return instance.flipDelta( fnTableIndices, nextVariable() );
+	}
+	
+	@Benchmark
+	public double flipDeltaWithDeadlineFlag() {
+		if( deadline.hasExpired() )
+			throw new CBBOC.TimeExceededException();
+		return instance.flipDelta( fnTableIndices, nextVariable() );
+	}
+	
+	@Benchmark
+	public double objectiveFnValue() {
+		return fn.value( nextCandidate() );
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,71 @@
+package cbboc;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Raw ProblemInstance evaluation across the four sample classes 
+ * (which vary N, K and M), and the overhead which ObjectiveFn adds on top of it.
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class EvaluationBenchmark {
+
+	private static final int NUM_CANDIDATES = 64;
+	
+	@Param( { "sample1", "sample2", "sample3", "sample4" } )
+	public String problemClass;
+	
+	private ProblemInstance instance;
+	private ObjectiveFn fn;
+	private boolean [][] candidates;
+	private int next;
+	
+	///////////////////////////////
+	
+	@Setup
+	public void setup() throws IOException {
+		instance = BenchmarkSupport.loadFirstTestingInstance( problemClass );
+		candidates = BenchmarkSupport.randomCandidates( NUM_CANDIDATES, instance.getNumGenes() );
+		fn = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( Long.MAX_VALUE ) );
+	}
+	
+	private boolean [] nextCandidate() {
+		next = ( next + 1 ) & ( NUM_CANDIDATES - 1 );
+		return candidates[ next ];
+	}
+	
+	///////////////////////////////
+	
+	@Benchmark
+	public double instanceValue() {
+		return instance.value( nextCandidate() );
+	}
+	
+	@Benchmark
+	public double objectiveFnValue() {
+		return fn.value( nextCandidate() );
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,68 @@
+package cbboc;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Time to parse a single instance file, and to load a whole problem class 
+ * (50 testing instances for NONE, plus 200 training instances for SHORT).
+ * Whole-class loads are measured with an empty InstanceCache unless cached is true, 
+ * in which case every load after the first warmup iteration is served from the cache.
+ */
+
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class LoadBenchmark {
+
+	@Param( { "sample1", "sample2", "sample3", "sample4" } )
+	public String problemClass;
+	
+	@State( Scope.Benchmark )
+	public static class Category {
+		@Param( { "NONE", "SHORT" } )
+		public TrainingCategory trainingCategory;
+		
+		@Param( { "false", "true" } )
+		public boolean cached;
+		
+		@Setup( Level.Invocation )
+		public void setUp() {
+			if( !cached )
+				InstanceCache.clear();
+		}
+	}
+	
+	///////////////////////////////
+	
+	@Benchmark
+	public ProblemInstance loadProblemInstance() throws IOException {
+		return BenchmarkSupport.loadFirstTestingInstance( problemClass );
+	}
+	
+	@Benchmark
+	public ProblemClass loadProblemClass( Category category ) throws IOException {
+		return new ProblemClass( Paths.get( BenchmarkSupport.problemClassPath( problemClass ) ), category.trainingCategory );
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
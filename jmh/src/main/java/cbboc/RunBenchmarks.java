@@ -0,0 +1,43 @@
+package cbboc;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Runs the benchmark suite with the GC profiler attached (for allocation rates) 
+ * and writes JSON results, e.g. one file per commit: 
+ * 
+ *   java -cp jmh/target/benchmarks.jar cbboc.RunBenchmarks jmh-results-$(git rev-parse --short HEAD).json [regexp...]
+ * 
+ * With no regexps, every benchmark is run.
+ */
+
+public final class RunBenchmarks {
+
+	public static void main( String [] args ) throws RunnerException {
+		if( args.length < 1 ) {
+			System.err.println( "usage: RunBenchmarks <results.json> [benchmark regexp...]" );
+			System.exit( 1 );
+		}
+		
+		ChainedOptionsBuilder options = new OptionsBuilder()
+			.addProfiler( GCProfiler.class )
+			.resultFormat( ResultFormatType.JSON )
+			.result( args[ 0 ] );
+		
+		if( args.length == 1 )
+			options.include( ".*Benchmark.*" );
+		for( int i=1; i<args.length; ++i )
+			options.include( args[ i ] );
+		
+		new Runner( options.build() ).run();
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
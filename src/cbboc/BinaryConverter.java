@@ -0,0 +1,92 @@
+package cbboc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Converts a problem class directory (trainingFiles.txt, testingFiles.txt 
+ * and the text instance files they list) into a parallel directory of binary 
+ * instances which ProblemClass memory-maps instead of parsing.
+ * 
+ * Usage: BinaryConverter <problem class dir> [<output dir>]
+ * 
+ * The output dir defaults to the input dir with "-bin" appended, e.g. resources/sample1-bin, 
+ * which can then be named in resources/classFolder.txt.
+ */
+
+public final class BinaryConverter {
+
+	private static final String [] INVENTORIES = { "trainingFiles.txt", "testingFiles.txt" };
+	
+	///////////////////////////////
+	
+	private static String binaryName( String textName ) {
+		final int dot = textName.lastIndexOf( '.' );
+		final int slash = textName.lastIndexOf( '/' );
+		return ( dot > slash ? textName.substring( 0, dot ) : textName ) + ProblemInstance.BINARY_FILE_EXTENSION;
+	}
+	
+	public static void convert( Path source, Path dest ) throws IOException {
+		Files.createDirectories( dest.resolve( "results" ) );
+		
+		for( String inventory : INVENTORIES ) {
+			File sourceInventory = source.resolve( inventory ).toFile();
+			if( !sourceInventory.exists() )
+				throw new RuntimeException( "Fatal problem class file error: cannot find " + sourceInventory );
+			
+			List< String > binaryFiles = new ArrayList< String >();
+			for( String f : ProblemClass.readInstances( sourceInventory ) ) {
+				final String binaryFile = binaryName( f );
+				Path binaryPath = dest.resolve( binaryFile );
+				if( binaryPath.getParent() != null )
+					Files.createDirectories( binaryPath.getParent() );
+				
+				InputStream is = new FileInputStream( source.resolve( f ).toFile() );
+				try {
+					new ProblemInstance( is ).writeBinary( binaryPath );
+				}
+				finally {
+					is.close();
+				}
+				binaryFiles.add( binaryFile );
+			}
+			
+			PrintWriter pw = new PrintWriter( dest.resolve( inventory ).toFile() );
+			try {
+				pw.println( binaryFiles.size() );
+				for( String f : binaryFiles )
+					pw.println( f );
+			}
+			finally {
+				pw.close();
+			}
+		}
+	}
+	
+	///////////////////////////////	
+	
+	public static void main( String [] args ) throws IOException {
+		if( args.length < 1 || args.length > 2 ) {
+			System.err.println( "usage: BinaryConverter <problem class dir> [<output dir>]" );
+			System.exit( 1 );
+		}
+		
+		Path source = Paths.get( args[ 0 ] ).toAbsolutePath().normalize();
+		Path dest = args.length == 2 ? Paths.get( args[ 1 ] ) : Paths.get( source + "-bin" );
+		convert( source, dest );
+		
+		System.out.println( "Converted " + source + " to " + dest );
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
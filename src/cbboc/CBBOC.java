@@ -6,29 +6,40 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
 import jeep.lang.Diag;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
-import org.apache.commons.lang3.tuple.Pair;
 
 import com.google.gson.Gson;
 
+import cbboc.util.DaemonThreadFactory;
+import cbboc.util.RNG;
+
 //////////////////////////////////////////////////////////////////////
 
 public final class CBBOC {
-
+	
 	private final static long BASE_TIME_PER_INSTANCE_IN_MILLIS = 60 * 1000L;
+	// Testing instance i uses RNG stream i:
+	private final static long TRAINING_RNG_STREAM = -1;
 	public static Logger LOGGER = Logger.getLogger( CBBOC.class.getName() );
-
+	
 	public static final boolean LOGGING_ENABLED = false;
 	static {
 		if( !LOGGING_ENABLED )
@@ -37,16 +48,47 @@ public final class CBBOC {
 	
 	////////////////////////////////
 	
-	static long trainingEndTime = -1;
-	static long testingEndTime = -1;	
+	/**
+	 * How the time allowed for training and for each testing instance is measured.
+	 * THREAD_CPU_TIME counts only the CPU time of the thread which calls train() or test(), 
+	 * so it is insensitive to machine load but does not count work delegated to other threads:
+	 * multithreaded competitors should be run with WALL_CLOCK or PROCESS_CPU_TIME instead. 
+	 * PROCESS_CPU_TIME counts the CPU time of every thread in the JVM (including the JVM's own), 
+	 * so testing instances are then loaded up front and tested one at a time. 
+	 */
+	
+	public enum TimeBudget {
+		WALL_CLOCK {
+			@Override
+			Deadline start( long maxTimeInMilliseconds ) { return Deadline.startWallClock( maxTimeInMilliseconds ); }
+		},
+		THREAD_CPU_TIME {
+			@Override
+			Deadline start( long maxTimeInMilliseconds ) { return Deadline.startThreadCpuTime( maxTimeInMilliseconds ); }
+		},
+		PROCESS_CPU_TIME {
+			@Override
+			Deadline start( long maxTimeInMilliseconds ) { return Deadline.startProcessCpuTime( maxTimeInMilliseconds ); }
+		};
+		
+		abstract Deadline start( long maxTimeInMilliseconds );
+	};
 	
 	////////////////////////////////
 	
-	static final class EvaluationsExceededException extends RuntimeException {
+	/**
+	 * Thrown by an ObjectiveFn (or its sessions) once its evaluation budget is exhausted.
+	 */
+	
+	public static final class EvaluationsExceededException extends RuntimeException {
 		private static final long serialVersionUID = 1L;		
 	}
 	
-	static final class TimeExceededException extends RuntimeException {
+	/**
+	 * Thrown by a timed ObjectiveFn (or its sessions) once its deadline has expired.
+	 */
+	
+	public static final class TimeExceededException extends RuntimeException {
 		private static final long serialVersionUID = 1L;
 	}	
 	
@@ -60,53 +102,138 @@ public final class CBBOC {
 		
 		return true;
 	}
-
+	
 	////////////////////////////////	
-
-	private static long trainClient( Competitor client, List< ObjectiveFn > p ) {
+	
+	private static long trainClient( Competitor client, List< ObjectiveFn > p, TimeBudget timeBudget, int traceCapacity, 
+			long runSeed, ResultsJournal journal ) throws IOException {
 		assert( allSameN( p ) );
-
+		
 		final long startTime = System.currentTimeMillis();	
 		final long maxTime = BASE_TIME_PER_INSTANCE_IN_MILLIS * p.size() * client.getTrainingCategory().getMultiplier();
-		trainingEndTime = startTime + maxTime;
+		final Deadline deadline = timeBudget.start( maxTime );
+		for( ObjectiveFn fn : p ) {
+			if( traceCapacity > 0 )
+				fn.enableTrace( traceCapacity );
+			fn.startDeadline( deadline );
+		}
 		
 		try {
+			RNG.reseedThread( runSeed, TRAINING_RNG_STREAM );
 			client.train( p, maxTime );
 		}
 		catch( TimeExceededException | EvaluationsExceededException ex ) {
 			// Intentionally Empty
 		}
+		finally {
+			deadline.expire();
+		}
 		
 		final long endTime = System.currentTimeMillis();
+		journal.recordTraining( p, endTime - startTime );
 		return endTime - startTime;
 	}
-
+	
 	////////////////////////////////
 	
-	private static long testClient( Competitor client, List< ObjectiveFn > fns ) {
-		
-		final long startTime = System.currentTimeMillis();		
-
-		for( ObjectiveFn fn : fns ) {
+	private static void testInstance( Competitor client, int index, ObjectiveFn fn, TimeBudget timeBudget, int traceCapacity, 
+			long runSeed, ResultsJournal journal ) throws IOException {
+		try {
+			final long maxTime = BASE_TIME_PER_INSTANCE_IN_MILLIS;
+			
+			if( traceCapacity > 0 )
+				fn.enableTrace( traceCapacity );
+			final Deadline deadline = timeBudget.start( maxTime );
+			fn.startDeadline( deadline );
 			try {
-				final long now = System.currentTimeMillis();
-				final long maxTime = BASE_TIME_PER_INSTANCE_IN_MILLIS;
-				
-				testingEndTime = now + maxTime;
+				// Each instance has its own random stream, so seeded results do not depend on the number of testing threads:
+				RNG.reseedThread( runSeed, index );
 				client.test( fn, maxTime );
 			}
-			catch( TimeExceededException | EvaluationsExceededException ex ) {
-				// Intentionally Empty
+			finally {
+				deadline.expire();
 			}
 		}
+		catch( TimeExceededException | EvaluationsExceededException ex ) {
+			// Intentionally Empty
+		}
+		
+		journal.recordTesting( index, fn );
+	}
+	
+	/**
+	 * Tests the instances not already recorded in journal. 
+	 */
+	
+	private static long testClient( Competitor client, List< ObjectiveFn > fns, int numTestingThreads, TimeBudget timeBudget, 
+			int traceCapacity, long runSeed, ResultsJournal journal ) throws IOException {
+		
+		final long startTime = System.currentTimeMillis();		
+		journal.startTesting();
+		
+		BitSet completed = journal.completedTesting();
+		if( numTestingThreads <= 1 ) {
+			for( int i=completed.nextClearBit( 0 ); i<fns.size(); i=completed.nextClearBit( i + 1 ) )
+				testInstance( client, i, fns.get( i ), timeBudget, traceCapacity, runSeed, journal );
+		}
+		else {
+			testInParallel( client, fns, completed, numTestingThreads, timeBudget, traceCapacity, runSeed, journal );
+		}
 		
 		final long endTime = System.currentTimeMillis();
+		journal.recordTestingTime();
 		return endTime - startTime;
 	}
 	
+	/**
+	 * Each instance's deadline starts when a pool thread picks it up, so an instance never 
+	 * waits on its own clock. Instances are fetched (and hence loaded) before being submitted.
+	 */
+	
+	private static void testInParallel( final Competitor client, List< ObjectiveFn > fns, BitSet completed, int numTestingThreads, 
+			final TimeBudget timeBudget, final int traceCapacity, final long runSeed, final ResultsJournal journal ) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool( numTestingThreads, new DaemonThreadFactory( "CBBOC-tester" ) );
+		try {
+			List< Future< ? > > futures = new ArrayList< Future< ? > >();
+			for( int i=completed.nextClearBit( 0 ); i<fns.size(); i=completed.nextClearBit( i + 1 ) ) {
+				final int index = i;
+				final ObjectiveFn fn = fns.get( i );
+				futures.add( pool.submit( new Callable< Void >() {
+					@Override
+					public Void call() throws IOException {
+						testInstance( client, index, fn, timeBudget, traceCapacity, runSeed, journal );
+						return null;
+					}
+				} ) );
+			}
+			
+			for( Future< ? > f : futures ) {
+				try {
+					f.get();
+				}
+				catch( InterruptedException ex ) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException( "interrupted while testing", ex );
+				}
+				catch( ExecutionException ex ) {
+					if( ex.getCause() instanceof IOException )
+						throw (IOException)ex.getCause();
+					if( ex.getCause() instanceof RuntimeException )
+						throw (RuntimeException)ex.getCause();
+					if( ex.getCause() instanceof Error )
+						throw (Error)ex.getCause();
+					throw new IllegalStateException( ex.getCause() );
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+	
 	////////////////////////////////
 	
-	private static final class OutputResults {
+	static final class OutputResults {
 		
 		final String competitorName;
 		final String competitorLanguage = "Java";
@@ -115,52 +242,47 @@ public final class CBBOC {
 		// final TrainingCategory trainingCategory;		
 		final int trainingCategory;		
 		final String datetime;
-		final List< Result > trainingResults = new ArrayList< Result >();
+		final List< Result > trainingResults;
 		final long trainingWallClockUsage;
-		final List< Result > testingResults  = new ArrayList< Result >();
+		final List< Result > testingResults;
 		final long testingWallClockUsage;
 		
 		///////////////////////////
-
-		private static final class Result {
+		
+		static final class Result {
 			final long remainingEvaluations;			
 			final long remainingEvaluationsWhenBestReached;
 			final double bestValue;
+			// Only present when tracing is enabled:
+			final Double areaUnderCurve;
+			final ImprovementTrace.Curve trace;
 			
 			///////////////////////////
 			
-			public Result( long remainingEvaluations, long remainingEvaluationsWhenBestReached, double bestValue ) {
+			public Result( long remainingEvaluations, long remainingEvaluationsWhenBestReached, double bestValue, ImprovementTrace.Curve trace ) {
 				this.remainingEvaluations = remainingEvaluations; 
 				this.remainingEvaluationsWhenBestReached = remainingEvaluationsWhenBestReached;
 				this.bestValue = bestValue; 
+				this.areaUnderCurve = trace == null ? null : trace.areaUnderCurve();
+				this.trace = trace;
 			}
 		}
-
+		
 		///////////////////////////
 		
-		OutputResults( String competitorName, String datetime, 
-				String problemClassName, ProblemClass problemClass, long trainingWallClockUsage, long testingWallClockUsage ) {
-
+		OutputResults( String competitorName, String datetime, String problemClassName, int trainingCategory, 
+				List< Result > trainingResults, long trainingWallClockUsage, List< Result > testingResults, long testingWallClockUsage ) {
+			
 			this.competitorName = competitorName;
 			this.problemClassName = problemClassName; 
 			this.datetime = datetime; 
-			// Diag.println( problemClass );
-			// Diag.println( problemClass.getTrainingCategory() );			
-			// this.trainingCategory = problemClass.getTrainingCategory();
-			this.trainingCategory = problemClass.getTrainingCategory().getNumericCode();
-			for( ObjectiveFn o : problemClass.getTrainingInstances() ) {
-				Pair< Long, Double > p = o.getRemainingEvaluationsAtBestValue();
-				this.trainingResults.add( new Result( o.getRemainingEvaluations(), p.getLeft(), p.getRight() ) );
-			}
+			this.trainingCategory = trainingCategory;
+			this.trainingResults = trainingResults;
 			this.trainingWallClockUsage = trainingWallClockUsage; 		
-			
-			for( ObjectiveFn o : problemClass.getTestingInstances() ) {
-				Pair< Long, Double > p = o.getRemainingEvaluationsAtBestValue();
-				this.testingResults.add( new Result( o.getRemainingEvaluations(), p.getLeft(), p.getRight() ) );
-			}
+			this.testingResults = testingResults;
 			this.testingWallClockUsage = testingWallClockUsage;			
 		}
-
+		
 		///////////////////////////
 		
 		static class ResultStats {
@@ -183,7 +305,7 @@ public final class CBBOC {
 		
 		///////////////////////////
 		
-		private static ResultStats resultStats( List< Result > results ) {
+		static ResultStats resultStats( List< Result > results ) {
 			
 			double [] bestValues = new double [ results.size() ];
 			double [] remainingEvaluationsWhenBestReached = new double [ results.size() ];
@@ -212,7 +334,36 @@ public final class CBBOC {
 	
 	////////////////////////////////	
 	
+	/**
+	 * Tests serially against the wall clock, unless the system properties 
+	 * "cbboc.testingThreads" or "cbboc.timeBudget" (a TimeBudget name) request otherwise.
+	 * With -Dcbboc.resume=true, an interrupted run of the same competitor on the same class 
+	 * is continued from its last completed testing instance (see ResultsJournal).
+	 * With -Dcbboc.seed=n, the streams of cbboc.util.RNG used in training and in testing
+	 * each instance are derived from n, so (evaluation-limited) runs are repeatable;
+	 * otherwise each run has streams of its own (see RNG.nextRunSeed()).
+	 * With -Dcbboc.lazyTesting=true, testing instances are loaded in the background during 
+	 * training and testing (see ProblemClass.Loading.LAZY_TESTING) rather than all beforehand.
+	 */
+	
 	public static OutputResults run( Competitor client ) throws IOException {
+		return run( client, Integer.getInteger( "cbboc.testingThreads", 1 ), 
+			TimeBudget.valueOf( System.getProperty( "cbboc.timeBudget", TimeBudget.WALL_CLOCK.name() ) ),
+			Boolean.getBoolean( "cbboc.resume" ) );
+	}
+	
+	public static OutputResults run( Competitor client, int numTestingThreads ) throws IOException {
+		return run( client, numTestingThreads, TimeBudget.WALL_CLOCK, false );
+	}
+	
+	/**
+	 * Runs up to numTestingThreads testing instances at once, each with its own time limit 
+	 * (measured according to timeBudget), provided that client.isThreadSafe(); otherwise testing is serial.
+	 * Note that concurrently tested instances compete for processors, so numTestingThreads 
+	 * should not exceed the number of processors available.  
+	 */
+	
+	public static OutputResults run( Competitor client, int numTestingThreads, TimeBudget timeBudget, boolean resume ) throws IOException {
 		
 		String problemClassName;
 		
@@ -233,44 +384,115 @@ public final class CBBOC {
 		// String relativePathToProblem = "/resources/test/toy/";
 		// String path = root + "/resources/test";
 		// String path = root + relativePathToProblem;
-		ProblemClass problemClass = new ProblemClass( Paths.get( path ), client.getTrainingCategory() );
+		OutputResults results = run( client, Paths.get( path ), numTestingThreads, timeBudget, resume );
+		System.out.println( results.toJSonString() );
+		// System.out.println( "Testing result stats: " + OutputResults.resultStats( results.testingResults ) );
+		return results;
+	}
+	
+	/**
+	 * As run( Competitor, int, TimeBudget, boolean ), for the problem class in directory root, 
+	 * whose name is taken to be that of the directory. The results are written to 
+	 * root/results, but not echoed to standard output.  
+	 */
+	
+	static OutputResults run( Competitor client, Path root, int numTestingThreads, TimeBudget timeBudget, boolean resume ) throws IOException {
+		return run( client, root, numTestingThreads, timeBudget, resume, RNG.nextRunSeed() );
+	}
+	
+	/**
+	 * As above, with the streams of cbboc.util.RNG for training and testing derived from runSeed.
+	 */
+	
+	static OutputResults run( Competitor client, Path root, int numTestingThreads, TimeBudget timeBudget, boolean resume, 
+			long runSeed ) throws IOException {
 		
-		long actualTrainingTime = 0; 
-		long actualTestingTime = 0; 
-				
-		switch( client.getTrainingCategory() ) {
-			case NONE : {
-				actualTestingTime = testClient( client, problemClass.getTestingInstances() );
-				LOGGER.info( "actualTestingTime:" + actualTestingTime );				
-			} break;
-			case SHORT :
-			case LONG : {				
-				actualTrainingTime = trainClient( client, problemClass.getTrainingInstances() );
-				LOGGER.info( "actualTrainingTime:" + actualTrainingTime );
-				
-				actualTestingTime = testClient( client, problemClass.getTestingInstances() );
-				LOGGER.info( "actualTestingTime:" + actualTestingTime );				
-			} break;
-			default : 
-				throw new IllegalStateException();
+		if( numTestingThreads > 1 && !client.isThreadSafe() ) {
+			LOGGER.warning( client.getClass().getName() + " is not thread-safe: testing serially" );
+			numTestingThreads = 1;
 		}
-
-		///////////////////////////
-
+		if( numTestingThreads > 1 && timeBudget == TimeBudget.PROCESS_CPU_TIME ) {
+			LOGGER.warning( "concurrent instances would be charged for each other's CPU time: testing serially" );
+			numTestingThreads = 1;
+		}
+		
+		final String problemClassName = root.getFileName().toString();
+		final String path = root.toString();
+		// Improvement traces are recorded and exported with the results if this is positive:
+		final int traceCapacity = Integer.getInteger( "cbboc.traceCapacity", 0 );
+		// Loading in the background would be charged to the client if all CPU time is:
+		final boolean lazyTesting = Boolean.getBoolean( "cbboc.lazyTesting" ) && timeBudget != TimeBudget.PROCESS_CPU_TIME;
+		LOGGER.info( "runSeed:" + runSeed );
+		
 		DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
-		String timestamp = dateFormat.format(new Date()); 
-		OutputResults results = new OutputResults( client.getClass().getName(), 
-				timestamp, problemClassName, problemClass, actualTrainingTime, actualTestingTime );
+		final String prefix = path + "/results/" + "CBBOC2016results-" + client.getClass().getCanonicalName() + "-" + problemClassName;
+		final ResultsJournal.Record header = ResultsJournal.Record.header( client.getClass().getName(), 
+			problemClassName, client.getTrainingCategory().getNumericCode(), dateFormat.format( new Date() ) );
 		
-		String outputPath = path + "/results/" + "CBBOC2016results-" + client.getClass().getCanonicalName() + "-" + problemClassName + "-" + timestamp + ".json";
-		PrintWriter pw = new PrintWriter( new FileOutputStream( new File( outputPath ) ) );
+		// Concurrent runs of the same competitor and class (e.g. in a tournament) each claim their own journal,
+		// and a run in one training category never resumes that of another:
+		final String journalPrefix = prefix + "-" + client.getTrainingCategory();
+		ResultsJournal journal = ResultsJournal.open( Paths.get( journalPrefix + ResultsJournal.JOURNAL_FILE_EXTENSION ), header, resume );
+		for( int i=1; journal == null; ++i )
+			journal = ResultsJournal.open( Paths.get( journalPrefix + "-" + i + ResultsJournal.JOURNAL_FILE_EXTENSION ), header, resume );
+		
+		final OutputResults results;
+		ProblemClass problemClass = null;
+		try {
+			// With lazy testing, testing instances are parsed in the background while the client trains 
+			// (except those already recorded by a resumed run); each one is fetched before its deadline 
+			// is started, so loading is never charged to the client.
+			problemClass = new ProblemClass( root, client.getTrainingCategory(), 
+				lazyTesting ? ProblemClass.Loading.LAZY_TESTING : ProblemClass.Loading.EAGER,
+				journal.completedTesting() );
+			
+			long actualTrainingTime = 0; 
+			long actualTestingTime = 0; 
+					
+			switch( client.getTrainingCategory() ) {
+				case NONE : {
+					actualTestingTime = testClient( client, problemClass.getTestingInstances(), numTestingThreads, timeBudget, traceCapacity, runSeed, journal );
+					LOGGER.info( "actualTestingTime:" + actualTestingTime );				
+				} break;
+				case SHORT :
+				case LONG : {				
+					actualTrainingTime = trainClient( client, problemClass.getTrainingInstances(), timeBudget, traceCapacity, runSeed, journal );
+					LOGGER.info( "actualTrainingTime:" + actualTrainingTime );
+					
+					actualTestingTime = testClient( client, problemClass.getTestingInstances(), numTestingThreads, timeBudget, traceCapacity, runSeed, journal );
+					LOGGER.info( "actualTestingTime:" + actualTestingTime );				
+				} break;
+				default : 
+					throw new IllegalStateException();
+			}
+			
+			results = journal.summary();
+		}
+		catch( IOException | RuntimeException | Error ex ) {
+			journal.close();
+			throw ex;
+		}
+		finally {
+			if( problemClass != null )
+				problemClass.close();
+		}
+		
+		///////////////////////////
+		
+		final String timestamp = dateFormat.format( new Date() );
+		String outputPath = prefix + "-" + timestamp;
+		// Runs finishing within the same second (e.g. in a tournament) get distinct files:
+		File outputFile = new File( outputPath + ".json" );
+		for( int i=1; !outputFile.createNewFile(); ++i ) {
+			outputPath = prefix + "-" + timestamp + "-" + i;
+			outputFile = new File( outputPath + ".json" );
+		}
+		
+		PrintWriter pw = new PrintWriter( new FileOutputStream( outputFile ) );
 		pw.println( results.toJSonString() );
 		pw.close();
 		
-		///////////////////////////		
-		
-		System.out.println( results.toJSonString() );
-		// System.out.println( "Testing result stats: " + OutputResults.resultStats( results.testingResults ) );
+		journal.closeAndMove( Paths.get( outputPath + ResultsJournal.JOURNAL_FILE_EXTENSION ) );
 		return results;
 	}
 }
@@ -19,6 +19,16 @@ public abstract class Competitor {
 	public abstract void train( List< ObjectiveFn > trainingSet, long maxTimeInMilliseconds );
 	
 	public abstract void test( ObjectiveFn testCase, long maxTimeInMilliseconds );	
+	
+	/**
+	 * Competitors which return true may have test() called concurrently on different 
+	 * testing instances, when parallel testing is requested via CBBOC.run( Competitor, int ). 
+	 * Results are then the same as for serial testing, apart from wall-clock figures, 
+	 * provided that each call to test() depends only on its own ObjectiveFn and on state 
+	 * fixed during training.
+	 */
+	
+	public boolean isThreadSafe() { return false; }
 }
 
 // End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,183 @@
+package cbboc;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import cbboc.util.DaemonThreadFactory;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * A time limit which is cheap to test from the evaluation hot path: 
+ * rather than reading the clock on every evaluation, a single shared timer thread 
+ * flips a volatile flag once the limit has passed. 
+ * 
+ * Tolerance: a deadline never expires early; it is observed as expired at most 
+ * the timer's wake-up latency after the limit (typically well under a millisecond, 
+ * plus any safepoint pause in progress at that moment). 
+ * 
+ * CPU-time deadlines are checked by the same timer: since a thread cannot use more 
+ * CPU time than elapses (nor the process more than that times the number of processors), 
+ * the check is scheduled after the remaining CPU allowance and rescheduled until it has 
+ * been used up, so no fixed polling interval is needed.
+ * 
+ * A thread CPU-time deadline measures only the thread that started it, so it does not 
+ * charge work which a multithreaded competitor hands to other threads: such competitors 
+ * should be timed by the wall clock or by process CPU time instead. Process CPU time 
+ * charges every thread of the JVM, including garbage collection, compilation and anything 
+ * else running at the same time (such as other instances being tested concurrently).   
+ */
+
+public final class Deadline {
+	
+	private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor( 1, 
+		new DaemonThreadFactory( "CBBOC-deadline-timer", Thread.MAX_PRIORITY ) );
+	static {
+		TIMER.setRemoveOnCancelPolicy( true );
+	}
+	
+	static final Deadline EXPIRED = new Deadline( true );
+	
+	///////////////////////////////
+	
+	private volatile boolean expired;
+	// The pending timer task, if any, cancelled (and so removed from the timer's queue) by expire():
+	private volatile ScheduledFuture< ? > task = null;
+	
+	///////////////////////////////
+	
+	private Deadline( boolean expired ) {
+		this.expired = expired;
+	}
+	
+	/**
+	 * @return a deadline which expires maxTimeInMilliseconds of wall-clock time from now. 
+	 */
+	
+	public static Deadline startWallClock( long maxTimeInMilliseconds ) {
+		final Deadline result = new Deadline( maxTimeInMilliseconds <= 0 );
+		if( !result.expired ) {
+			result.schedule( new Runnable() {
+				@Override
+				public void run() {
+					result.expired = true;
+				}
+			}, TimeUnit.MILLISECONDS.toNanos( maxTimeInMilliseconds ) );
+		}
+		return result;
+	}
+	
+	/**
+	 * @return a deadline which expires once the calling thread has consumed 
+	 * maxTimeInMilliseconds of CPU time from now (or has terminated). 
+	 * CPU time used by any other thread is not counted. 
+	 */
+	
+	public static Deadline startThreadCpuTime( long maxTimeInMilliseconds ) {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if( !threads.isThreadCpuTimeSupported() )
+			throw new UnsupportedOperationException( "thread CPU time is not supported by this JVM" );
+		if( !threads.isThreadCpuTimeEnabled() )
+			threads.setThreadCpuTimeEnabled( true );
+		
+		final long threadId = Thread.currentThread().getId();
+		return startCpuTime( maxTimeInMilliseconds, threads.getCurrentThreadCpuTime(), 1, new CpuClock() {
+			@Override
+			public long cpuTime() { return threads.getThreadCpuTime( threadId ); }
+		} );
+	}
+	
+	/**
+	 * @return a deadline which expires once the JVM as a whole (all of its threads) 
+	 * has consumed maxTimeInMilliseconds of CPU time from now. 
+	 */
+	
+	public static Deadline startProcessCpuTime( long maxTimeInMilliseconds ) {
+		final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if( !( os instanceof com.sun.management.OperatingSystemMXBean ) 
+				|| ( (com.sun.management.OperatingSystemMXBean)os ).getProcessCpuTime() < 0 )
+			throw new UnsupportedOperationException( "process CPU time is not supported by this JVM" );
+		
+		final com.sun.management.OperatingSystemMXBean process = (com.sun.management.OperatingSystemMXBean)os;
+		return startCpuTime( maxTimeInMilliseconds, process.getProcessCpuTime(), os.getAvailableProcessors(), new CpuClock() {
+			@Override
+			public long cpuTime() { return process.getProcessCpuTime(); }
+		} );
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * A CPU time in nanoseconds, or a negative value once it can no longer be measured. 
+	 */
+	
+	private interface CpuClock {
+		long cpuTime();
+	}
+	
+	/**
+	 * @param numProcessors the most CPU time which clock can advance by per unit of wall-clock time.
+	 */
+	
+	private static Deadline startCpuTime( long maxTimeInMilliseconds, long startCpuTime, final int numProcessors, final CpuClock clock ) {
+		final long endCpuTime = startCpuTime + TimeUnit.MILLISECONDS.toNanos( maxTimeInMilliseconds );
+		
+		final Deadline result = new Deadline( maxTimeInMilliseconds <= 0 );
+		if( !result.expired ) {
+			result.schedule( new Runnable() {
+				@Override
+				public void run() {
+					if( result.expired )
+						return;
+					
+					final long cpuTime = clock.cpuTime();
+					final long remaining = endCpuTime - cpuTime;
+					if( cpuTime < 0 || remaining <= 0 )
+						result.expired = true;
+					else
+						result.schedule( this, Math.max( 1, remaining / numProcessors ) );
+				}
+			}, TimeUnit.MILLISECONDS.toNanos( maxTimeInMilliseconds ) / numProcessors );
+		}
+		return result;
+	}
+	
+	private void schedule( Runnable check, long delayInNanoseconds ) {
+		task = TIMER.schedule( check, delayInNanoseconds, TimeUnit.NANOSECONDS );
+		// expire() may have run before task was assigned:
+		if( expired )
+			task.cancel( false );
+	}
+	
+	///////////////////////////////
+	
+	public boolean hasExpired() { return expired; }
+	
+	/**
+	 * Ends the time allowed immediately, e.g. once the competitor has returned,
+	 * and cancels the pending timer task (so that finished sessions do not
+	 * accumulate in the timer's queue until their limit would have passed).
+	 */
+	
+	public void expire() {
+		expired = true;
+		final ScheduledFuture< ? > pending = task;
+		if( pending != null )
+			pending.cancel( false );
+	}
+	
+	/**
+	 * @return whether a timer task for this deadline is still scheduled.
+	 */
+	
+	public boolean isTimerPending() {
+		final ScheduledFuture< ? > pending = task;
+		return pending != null && !pending.isDone();
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,42 @@
+package cbboc;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * A stateful evaluation session over an ObjectiveFn which holds an incumbent 
+ * and answers questions about its Hamming-1 neighbours incrementally.
+ * 
+ * Accounting follows the black-box rules: each candidate whose value is revealed 
+ * is charged one evaluation against the budget of the underlying ObjectiveFn.
+ * Re-probing or committing the flip most recently probed via valueIfFlipped() 
+ * is free, since its value is already known (though the time limit still applies).
+ * 
+ * Values are maintained incrementally and so may differ from a full re-evaluation 
+ * of the incumbent in the last few bits.
+ */
+
+public interface FlipSession {
+
+	public int getNumGenes();
+	
+	/** @return the value of the incumbent (not charged: it is already known) */
+	public double value();
+	
+	public boolean get( int index );
+	
+	/** @return a copy of the incumbent */
+	public boolean [] getIncumbent();
+	
+	///////////////////////////////
+	
+	/** @return the value the incumbent would have if bit index were flipped (charged, unless it was the last probed) */
+	public double valueIfFlipped( int index );
+	
+	/** Flips bit index of the incumbent, @return the new value of the incumbent */
+	public double flip( int index );
+	
+	/** Replaces the incumbent by a copy of candidate, @return its value (charged) */
+	public double restart( boolean [] candidate );
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,277 @@
+package cbboc;
+
+import java.util.Arrays;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Anytime performance record of an ObjectiveFn: each improvement of the best-so-far value,
+ * as (evaluations used, elapsed nanoseconds, value), held in preallocated primitive ring buffers.
+ * Nothing is allocated per evaluation, and only improvements are recorded.
+ *
+ * Evaluations and time are measured from when the trace is started (by the harness,
+ * when the instance is handed to the competitor). Once the buffers are full, the oldest
+ * improvements are overwritten, so the latest (and best) values are always retained; 
+ * the first improvement, and the last one overwritten, are also kept, so that the curve 
+ * still spans the whole run. The area under the curve is accumulated as improvements 
+ * are recorded, so it is exact however many points have been dropped.
+ * 
+ * Under concurrent evaluation, an improvement can be recorded after those of evaluations 
+ * charged later, which it then supersedes: they are removed from the curve (and their 
+ * contribution from the area), so evaluations stay non-decreasing. Only if a superseded 
+ * improvement has already been dropped is the new one moved to the last dropped point, 
+ * which overstates its evaluations (by at most the number of concurrent evaluations).
+ */
+
+public final class ImprovementTrace {
+	
+	private final long [] evaluations;
+	private final long [] elapsedNanos;
+	private final double [] values;
+	private int next = 0;
+	private int size = 0;
+	
+	private boolean hasFirst;
+	private long firstEvaluations, firstElapsedNanos;
+	private double firstValue;
+	
+	private long numDropped;
+	private long lastDroppedEvaluations, lastDroppedElapsedNanos;
+	private double lastDroppedValue;
+	
+	// The area under the curve from the first point to the last:
+	private double area;
+	
+	private long originRemainingEvaluations;
+	private long originNanos;
+	
+	///////////////////////////////
+	
+	ImprovementTrace( int capacity, long remainingEvaluations ) {
+		if( capacity <= 0 )
+			throw new IllegalArgumentException( "positive capacity expected, found " + capacity );
+		
+		this.evaluations = new long [ capacity ];
+		this.elapsedNanos = new long [ capacity ];
+		this.values = new double [ capacity ];
+		start( remainingEvaluations );
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Discards any improvements so far and restarts the evaluation count and clock.
+	 */
+	
+	synchronized void start( long remainingEvaluations ) {
+		this.originRemainingEvaluations = remainingEvaluations;
+		this.originNanos = System.nanoTime();
+		next = 0;
+		size = 0;
+		hasFirst = false;
+		numDropped = 0;
+		area = 0.0;
+	}
+	
+	/**
+	 * Improvements overtaken by a better value already recorded (as can happen when
+	 * evaluating concurrently) are ignored, so the recorded values are strictly increasing.
+	 */
+	
+	synchronized void record( double value, long remainingAtValue ) {
+		if( hasFirst && !( value > lastValue() ) )
+			return;
+		
+		long e = originRemainingEvaluations - remainingAtValue;
+		final long t = System.nanoTime() - originNanos;
+		
+		// Remove the improvements this one supersedes, i.e. those of evaluations charged no earlier:
+		while( hasFirst && lastEvaluations() >= e ) {
+			if( size > 0 ) {
+				next = ( next + values.length - 1 ) % values.length;
+				--size;
+				area -= lastValue() * ( evaluations[ next ] - lastEvaluations() );
+			}
+			else if( numDropped > 0 ) {
+				// The improvement before the last dropped is unknown, so it cannot be removed:
+				e = lastDroppedEvaluations;
+				break;
+			}
+			else {
+				hasFirst = false;
+			}
+		}
+		
+		if( !hasFirst ) {
+			hasFirst = true;
+			firstEvaluations = e;
+			firstElapsedNanos = t;
+			firstValue = value;
+			area = 0.0;
+			return;
+		}
+		
+		area += lastValue() * ( e - lastEvaluations() );
+		if( size == values.length ) {
+			lastDroppedEvaluations = evaluations[ next ];
+			lastDroppedElapsedNanos = elapsedNanos[ next ];
+			lastDroppedValue = values[ next ];
+			++numDropped;
+		}
+		evaluations[ next ] = e;
+		elapsedNanos[ next ] = t;
+		values[ next ] = value;
+		next = ( next + 1 ) % values.length;
+		size = Math.min( size + 1, values.length );
+	}
+	
+	/**
+	 * The last point of the curve: the newest in the ring, else the last dropped, else the first.
+	 */
+	
+	private long lastEvaluations() {
+		if( size > 0 )
+			return evaluations[ ( next + values.length - 1 ) % values.length ];
+		return numDropped > 0 ? lastDroppedEvaluations : firstEvaluations;
+	}
+	
+	private double lastValue() {
+		if( size > 0 )
+			return values[ ( next + values.length - 1 ) % values.length ];
+		return numDropped > 0 ? lastDroppedValue : firstValue;
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * @return the improvements retained, in order, with the evaluation budget at the start of the trace.
+	 */
+	
+	public synchronized Curve toCurve() {
+		// The first improvement, the last one dropped (if any), then the ring:
+		final int length = ( hasFirst ? 1 : 0 ) + ( numDropped > 0 ? 1 : 0 ) + size;
+		long [] e = new long [ length ];
+		long [] t = new long [ length ];
+		double [] v = new double [ length ];
+		int k = 0;
+		if( hasFirst ) {
+			e[ k ] = firstEvaluations;
+			t[ k ] = firstElapsedNanos;
+			v[ k++ ] = firstValue;
+		}
+		if( numDropped > 0 ) {
+			e[ k ] = lastDroppedEvaluations;
+			t[ k ] = lastDroppedElapsedNanos;
+			v[ k++ ] = lastDroppedValue;
+		}
+		
+		final int first = ( next + values.length - size ) % values.length;
+		for( int i=0; i<size; ++i ) {
+			final int j = ( first + i ) % values.length;
+			e[ k ] = evaluations[ j ];
+			t[ k ] = elapsedNanos[ j ];
+			v[ k++ ] = values[ j ];
+		}
+		// Points between the first and the last dropped are missing:
+		return new Curve( originRemainingEvaluations, e, t, v, Math.max( 0, numDropped - 1 ), area );
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Best-so-far curve, as exported with the results.
+	 */
+	
+	public static final class Curve {
+		
+		final long budget;
+		final long [] evaluations;
+		final long [] elapsedNanos;
+		final double [] values;
+		// Improvements missing between the first two points, and the area from the first point to the last:
+		final long numDropped;
+		final double areaToLastPoint;
+		
+		///////////////////////////
+		
+		Curve( long budget, long [] evaluations, long [] elapsedNanos, double [] values, long numDropped, double areaToLastPoint ) {
+			this.budget = budget;
+			this.evaluations = evaluations;
+			this.elapsedNanos = elapsedNanos;
+			this.values = values;
+			this.numDropped = numDropped;
+			this.areaToLastPoint = areaToLastPoint;
+		}
+		
+		///////////////////////////
+		
+		public int size() { return values.length; }
+		public long getBudget() { return budget; }
+		public long getEvaluations( int i ) { return evaluations[ i ]; }
+		public long getElapsedNanos( int i ) { return elapsedNanos[ i ]; }
+		public double getValue( int i ) { return values[ i ]; }
+		
+		/** @return the number of improvements missing (all between the first and second points) */
+		public long getNumDropped() { return numDropped; }
+		public boolean isTruncated() { return numDropped > 0; }
+		
+		/**
+		 * @return the mean best-so-far value over the whole evaluation budget, i.e. the area
+		 * under the best-so-far curve divided by the budget. The curve is taken to be
+		 * zero before its first point, so faster convergence gives a larger area.
+		 */
+		
+		public double areaUnderCurve() {
+			if( budget <= 0 )
+				return Double.NaN;
+			if( values.length == 0 )
+				return 0.0;
+			
+			final int last = values.length - 1;
+			// The area up to the last point is accumulated by the trace, so is exact even if truncated:
+			return ( areaToLastPoint + values[ last ] * ( budget - Math.min( evaluations[ last ], budget ) ) ) / budget;
+		}
+		
+		/**
+		 * @return the index of the first point whose value is at least target, or -1 if none.
+		 */
+		
+		private int indexOfTarget( double target ) {
+			for( int i=0; i<values.length; ++i )
+				if( values[ i ] >= target )
+					return i;
+			
+			return -1;
+		}
+		
+		/**
+		 * @return the evaluations used when target was first reached, or -1 if it never was.
+		 * If the curve is truncated and target was first reached by a dropped improvement 
+		 * (i.e. it lies between the first two values), this is an upper bound: the evaluations 
+		 * at the last improvement dropped.
+		 */
+		
+		public long evaluationsToTarget( double target ) {
+			final int i = indexOfTarget( target );
+			return i < 0 ? -1 : evaluations[ i ];
+		}
+		
+		/**
+		 * @return the nanoseconds elapsed when target was first reached, or -1 if it never was
+		 * (an upper bound in the same circumstances as for evaluationsToTarget).
+		 */
+		
+		public long nanosToTarget( double target ) {
+			final int i = indexOfTarget( target );
+			return i < 0 ? -1 : elapsedNanos[ i ];
+		}
+		
+		@Override
+		public String toString() {
+			return "Curve(budget:" + budget + ",numDropped:" + numDropped + ",evaluations:" + Arrays.toString( evaluations )
+				+ ",elapsedNanos:" + Arrays.toString( elapsedNanos ) + ",values:" + Arrays.toString( values ) + ")";
+		}
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
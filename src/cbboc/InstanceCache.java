@@ -0,0 +1,197 @@
+package cbboc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Process-wide cache of parsed ProblemInstances, so that repeated runs over the same 
+ * problem class within one JVM (e.g. parameter sweeps) only read each file once.
+ * 
+ * Entries are keyed by the file's real path, last-modified time and size, so an edited file 
+ * is reloaded. ProblemInstance is immutable and can be shared freely, whereas budgets 
+ * live in the ObjectiveFn wrappers that ProblemClass creates afresh for every run.
+ * 
+ * The cache is bounded by the total sizeInBytes() of its instances and evicts 
+ * least-recently used entries first. An instance which grows once cached (when its
+ * Walsh decomposition is built) is charged again for its new size, via recharge(). The bound defaults to a quarter of the maximum heap
+ * and can be set via the system property "cbboc.instanceCache.bytes" or setCapacityBytes().  
+ */
+
+public final class InstanceCache {
+	
+	private static final String CAPACITY_PROPERTY = "cbboc.instanceCache.bytes";
+	
+	private static final class Key {
+		
+		final Path path;
+		final long lastModified;
+		final long size;
+		
+		Key( Path path, long lastModified, long size ) {
+			this.path = path;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+		
+		@Override
+		public boolean equals( Object o ) {
+			if( !( o instanceof Key ) )
+				return false;
+			
+			Key k = (Key)o;
+			return path.equals( k.path ) && lastModified == k.lastModified && size == k.size;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * ( 31 * path.hashCode() + Long.hashCode( lastModified ) ) + Long.hashCode( size );
+		}
+	}
+	
+	/**
+	 * A cached instance, with the size it is currently charged for.
+	 */
+	
+	private static final class Entry {
+		
+		final ProblemInstance instance;
+		long chargedBytes;
+		
+		Entry( ProblemInstance instance ) {
+			this.instance = instance;
+			this.chargedBytes = instance.sizeInBytes();
+		}
+	}
+	
+	///////////////////////////////
+	
+	private static final LinkedHashMap< Key, Entry > ENTRIES = new LinkedHashMap< Key, Entry >( 16, 0.75f, true );
+	
+	private static long capacityBytes = Long.getLong( CAPACITY_PROPERTY, Runtime.getRuntime().maxMemory() / 4 );
+	private static long usedBytes = 0;
+	private static long hits = 0;
+	private static long misses = 0;
+	
+	///////////////////////////////
+	
+	private InstanceCache() {}
+	
+	///////////////////////////////
+	
+	/**
+	 * @return the cached instance for file, or else the result of loader, which is then cached.
+	 * Loading happens outside the lock, so distinct files can be loaded concurrently.
+	 */
+	
+	static ProblemInstance get( Path file, Callable< ProblemInstance > loader ) throws IOException {
+		
+		BasicFileAttributes attributes = Files.readAttributes( file, BasicFileAttributes.class );
+		Key key = new Key( file.toRealPath(), attributes.lastModifiedTime().toMillis(), attributes.size() );
+		
+		synchronized( InstanceCache.class ) {
+			Entry cached = ENTRIES.get( key );
+			if( cached != null ) {
+				++hits;
+				return cached.instance;
+			}
+			++misses;
+		}
+		
+		final ProblemInstance result;
+		try {
+			result = loader.call();
+		}
+		catch( IOException | RuntimeException ex ) {
+			throw ex;
+		}
+		catch( Exception ex ) {
+			throw new IllegalStateException( ex );
+		}
+		
+		synchronized( InstanceCache.class ) {
+			// Another thread may have loaded the same file meanwhile:
+			Entry entry = new Entry( result );
+			Entry previous = ENTRIES.put( key, entry );
+			if( previous != null )
+				usedBytes -= previous.chargedBytes;
+			usedBytes += entry.chargedBytes;
+			evict();
+		}
+		
+		return result;
+	}
+	
+	private static void evict() {
+		assert Thread.holdsLock( InstanceCache.class );
+		Iterator< Entry > it = ENTRIES.values().iterator();
+		while( usedBytes > capacityBytes && it.hasNext() ) {
+			usedBytes -= it.next().chargedBytes;
+			it.remove();
+		}
+	}
+	
+	/**
+	 * Charges the cache entry (if any) for instance with its current sizeInBytes(), 
+	 * evicting other entries if it no longer fits.
+	 */
+	
+	static synchronized void recharge( ProblemInstance instance ) {
+		for( Entry entry : ENTRIES.values() ) {
+			if( entry.instance == instance ) {
+				final long size = instance.sizeInBytes();
+				usedBytes += size - entry.chargedBytes;
+				entry.chargedBytes = size;
+				evict();
+				return;
+			}
+		}
+	}
+	
+	///////////////////////////////
+	
+	public static synchronized long getHits() { return hits; }
+	public static synchronized long getMisses() { return misses; }
+	public static synchronized int size() { return ENTRIES.size(); }
+	public static synchronized long getUsedBytes() { return usedBytes; }
+	public static synchronized long getCapacityBytes() { return capacityBytes; }
+	
+	/**
+	 * A capacity of 0 disables caching.
+	 */
+	
+	public static synchronized void setCapacityBytes( long capacityBytes ) {
+		if( capacityBytes < 0 )
+			throw new IllegalArgumentException( "non-negative capacity expected, found " + capacityBytes );
+		
+		InstanceCache.capacityBytes = capacityBytes;
+		evict();
+	}
+	
+	/**
+	 * Empties the cache and resets the hit and miss counts.
+	 */
+	
+	public static synchronized void clear() {
+		ENTRIES.clear();
+		usedBytes = 0;
+		hits = 0;
+		misses = 0;
+	}
+	
+	///////////////////////////////
+	
+	public static synchronized String statistics() {
+		return "InstanceCache(entries:" + ENTRIES.size() + ",usedBytes:" + usedBytes + ",capacityBytes:" + capacityBytes 
+			+ ",hits:" + hits + ",misses:" + misses + ")";
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,224 @@
+package cbboc;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Line-oriented tokenizer for instance files, which reads bytes from a buffered channel 
+ * and parses ints and decimals in place, without allocating a String per token.
+ * 
+ * Errors are reported as per a java.util.Scanner over each line: 
+ * InputMismatchException for a malformed token and NoSuchElementException 
+ * when a line (or the input) ends before the expected token.
+ * Decimals are parsed to the same (correctly rounded) double as Double.parseDouble.
+ */
+
+final class InstanceTokenizer {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	// Exactly representable powers of ten:
+	private static final double [] POW10 = { 
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	
+	///////////////////////////////
+	
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+	private final byte [] bytes = buffer.array();
+	private int pos = 0, limit = 0;
+	private int lineNumber = 1;
+	
+	private char [] token = new char [ 32 ];
+	private int tokenLength;
+	
+	///////////////////////////////
+	
+	InstanceTokenizer( InputStream is ) {
+		this.channel = is instanceof FileInputStream ? 
+			((FileInputStream)is).getChannel() : Channels.newChannel( is );
+	}
+	
+	///////////////////////////////
+	
+	/** @return the next byte without consuming it, or -1 at end of input */ 
+	private int peek() throws IOException {
+		if( pos == limit ) {
+			buffer.clear();
+			int n;
+			do {
+				n = channel.read( buffer );
+			} while( n == 0 );
+			
+			if( n < 0 )
+				return -1;
+			
+			pos = 0;
+			limit = n;
+		}
+		
+		return bytes[ pos ] & 0xFF;
+	}
+	
+	private static boolean isEndOfLine( int c ) {
+		return c == '\n' || c == '\r' || c == -1;
+	}
+	
+	private static boolean isBlank( int c ) {
+		return c <= ' ' && !isEndOfLine( c );
+	}
+	
+	/**
+	 * Reads the next token on the current line into token[ 0 ... tokenLength-1 ].
+	 */
+	
+	private void readToken() throws IOException {
+		int c = peek();
+		while( isBlank( c ) ) {
+			++pos;
+			c = peek();
+		}
+		
+		if( isEndOfLine( c ) )
+			throw new NoSuchElementException( "unexpected end of " + ( c == -1 ? "input" : "line " + lineNumber ) );
+		
+		tokenLength = 0;
+		while( !isBlank( c ) && !isEndOfLine( c ) ) {
+			if( tokenLength == token.length )
+				token = Arrays.copyOf( token, 2 * token.length );
+			
+			token[ tokenLength++ ] = (char)c;
+			++pos;
+			c = peek();
+		}
+	}
+	
+	private InputMismatchException mismatch() {
+		return new InputMismatchException( "For input string: \"" + new String( token, 0, tokenLength ) + "\" at line " + lineNumber );
+	}
+	
+	///////////////////////////////
+	
+	int nextInt() throws IOException {
+		readToken();
+		
+		int i = 0;
+		boolean negative = false;
+		if( token[ 0 ] == '-' || token[ 0 ] == '+' ) {
+			negative = token[ 0 ] == '-';
+			++i;
+		}
+		
+		if( i == tokenLength )
+			throw mismatch();
+		
+		long result = 0;
+		for( ; i<tokenLength; ++i ) {
+			final int digit = token[ i ] - '0';
+			if( digit < 0 || digit > 9 )
+				throw mismatch();
+			
+			result = result * 10 + digit;
+			if( result > (long)Integer.MAX_VALUE + 1 )
+				throw mismatch();
+		}
+
+		result = negative ? -result : result;
+		if( result > Integer.MAX_VALUE )
+			throw mismatch();
+		
+		return (int)result;
+	}
+	
+	double nextDouble() throws IOException {
+		readToken();
+		
+		int i = 0;
+		boolean negative = false;
+		if( token[ 0 ] == '-' || token[ 0 ] == '+' ) {
+			negative = token[ 0 ] == '-';
+			++i;
+		}
+		
+		long mantissa = 0;
+		int fractionDigits = 0;
+		boolean seenDigit = false, seenPoint = false;
+		for( ; i<tokenLength; ++i ) {
+			final char c = token[ i ];
+			if( c >= '0' && c <= '9' ) {
+				seenDigit = true;
+				mantissa = mantissa * 10 + ( c - '0' );
+				if( seenPoint )
+					++fractionDigits;
+				if( mantissa > MAX_EXACT_MANTISSA || fractionDigits >= POW10.length )
+					return slowDouble();
+			}
+			else if( c == '.' && !seenPoint ) {
+				seenPoint = true;
+			}
+			else {
+				// exponents, NaN, Infinity, ...
+				return slowDouble();
+			}
+		}
+		
+		if( !seenDigit )
+			throw mismatch();
+
+		// Both operands are exact, so the quotient is correctly rounded: 
+		final double result = mantissa / POW10[ fractionDigits ];
+		return negative ? -result : result;
+	}
+	
+	private double slowDouble() {
+		try {
+			final String s = new String( token, 0, tokenLength );
+			final char last = s.charAt( s.length() - 1 );
+			// Double.parseDouble() is more lenient than Scanner: 
+			if( last == 'd' || last == 'D' || last == 'f' || last == 'F' || s.indexOf( 'x' ) >= 0 || s.indexOf( 'X' ) >= 0 )
+				throw mismatch();
+			
+			return Double.parseDouble( s );
+		}
+		catch( NumberFormatException ex ) {
+			throw mismatch();
+		}
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Skips the rest of the current line (including any further tokens) and its terminator.
+	 */
+	
+	void nextLine() throws IOException {
+		int c = peek();
+		while( !isEndOfLine( c ) ) {
+			++pos;
+			c = peek();
+		}
+		
+		if( c == '\r' ) {
+			++pos;
+			c = peek();
+		}
+		if( c == '\n' )
+			++pos;
+		
+		++lineNumber;
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
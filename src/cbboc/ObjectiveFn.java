@@ -1,25 +1,55 @@
 package cbboc;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
 import jeep.lang.Diag;
 
-import org.apache.commons.lang3.mutable.MutableLong;
 import org.apache.commons.lang3.tuple.Pair;
 
+import cbboc.util.PackedBits;
+
+/**
+ * Safe for use from several threads at once: the (possibly shared) budget is an atomic 
+ * counter which is never overdrawn, and the best-value record is held in primitive fields 
+ * guarded by a lock which is only taken when an evaluation may improve on it.
+ * Each evaluation is assigned the remaining-evaluations count left after it was charged,
+ * so the best-value record is the same as it would be if the evaluations had been 
+ * performed serially in that order. 
+ * 
+ * Each instance carries its own deadline (the training instances of a run share one), 
+ * so independent runs and concurrently tested instances can coexist in one JVM.
+ */
+
 public final class ObjectiveFn {
 	
 	private final ProblemInstance instance;
 	private final TimingMode timingMode;
-	private MutableLong remainingEvaluations;
+	private final AtomicLong remainingEvaluations;
 	
-	private Pair< Long, Double > remainingEvaluationsAtBestValue = null; // Pair.of( -1L, Double.NaN );
+	// Written only under bestLock; bestValue is volatile so that non-improving evaluations can skip the lock:
+	private final Object bestLock = new Object();
+	private volatile double bestValue = Double.NEGATIVE_INFINITY;
+	private long remainingEvaluationsAtBestValue = -1;
+	private boolean [] bestCandidate = null; 
+	
+	private volatile Deadline deadline = Deadline.EXPIRED;
+	private volatile ImprovementTrace trace = null;
 	
 	///////////////////////////////
 	
-	enum TimingMode {
-		TRAINING, TESTING
+	public enum TimingMode {
+		TRAINING, TESTING, 
+		UNTIMED // no deadline: for tests and benchmarks outside of the CBBOC harness 
 	};
 	
-	public ObjectiveFn( ProblemInstance instance, TimingMode timingMode, MutableLong remainingEvaluations ) { 
+	public ObjectiveFn( ProblemInstance instance, TimingMode timingMode, AtomicLong remainingEvaluations ) { 
 
 		this.instance = instance;
 		this.timingMode = timingMode;
@@ -31,47 +61,532 @@ public final class ObjectiveFn {
 	
 	public double value( boolean [] candidate ) {
 		
-		final long timeNow = System.currentTimeMillis();
-		if( timingMode == TimingMode.TRAINING ) {
-			if( timeNow > CBBOC.trainingEndTime )
-				throw new CBBOC.TimeExceededException();				
+		checkTime();
+		checkEvaluations();
+		
+		final double value = instance.value( candidate );
+		recordBest( value, chargeEvaluations( 1 ) - 1, candidate, -1 );
+		return value;
+	}
+	
+	/**
+	 * As value( boolean [] ), for a candidate packed 64 genes to a long (see cbboc.util.PackedBits).
+	 */
+	
+	public double value( long [] packedCandidate ) {
+		
+		checkTime();
+		checkEvaluations();
+		
+		final double value = instance.value( packedCandidate );
+		recordBest( value, chargeEvaluations( 1 ) - 1, packedCandidate );
+		return value;
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Evaluates candidates[ 0 ... candidates.length-1 ] into results, 
+	 * with the same outcome as that many successive calls to value( boolean [] ):
+	 * the deadline is checked once, evaluations are reserved from the budget in one step 
+	 * and the best value (and remaining evaluations when it was reached) is that of the 
+	 * first candidate to attain it.
+	 * 
+	 * If the budget is insufficient for the whole batch, the candidates that fit are 
+	 * evaluated and recorded before EvaluationsExceededException is thrown.   
+	 */
+	
+	public void valueBatch( boolean [][] candidates, double [] results ) {
+		valueBatch( candidates, results, null );
+	}
+	
+	/**
+	 * As valueBatch( boolean [][], double [] ), but with the candidates evaluated in parallel 
+	 * on executor: a ForkJoinPool (e.g. ForkJoinPool.commonPool()) is driven by recursive 
+	 * splitting, any other Executor receives a fixed number of contiguous chunks.
+	 * Budget accounting and best-value tracking are done afterwards in candidate order, 
+	 * so the outcome is the same as for the serial version.
+	 */
+
+	public void valueBatch( boolean [][] candidates, double [] results, Executor executor ) {
+		if( results.length < candidates.length )
+			throw new IllegalArgumentException( "results of length at least " + candidates.length + " expected, found " + results.length );
+		for( boolean [] candidate : candidates )
+			if( candidate.length != getNumGenes() )
+				throw new IllegalArgumentException( "candidate of length " + getNumGenes() + " expected, found " + candidate.length );
+		
+		if( candidates.length == 0 )
+			return;
+		
+		checkTime();
+		
+		final long remainingBefore = chargeEvaluations( candidates.length );
+		final int numGranted = (int)Math.min( candidates.length, remainingBefore );
+		
+		if( executor == null )
+			evaluateRange( candidates, results, 0, numGranted );
+		else if( executor instanceof ForkJoinPool )
+			((ForkJoinPool)executor).invoke( new BatchTask( candidates, results, 0, numGranted, 
+				Math.max( 1, numGranted / ( 4 * ((ForkJoinPool)executor).getParallelism() ) ) ) );
+		else
+			evaluateInChunks( candidates, results, numGranted, executor );
+		
+		recordBest( candidates, results, numGranted, remainingBefore );
+		
+		if( numGranted < candidates.length )
+			throw new CBBOC.EvaluationsExceededException();
+	}
+	
+	///////////////////////////////
+	
+	private void evaluateRange( boolean [][] candidates, double [] results, int from, int to ) {
+		for( int i=from; i<to; ++i )
+			results[ i ] = instance.value( candidates[ i ] );
+	}
+	
+	private final class BatchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		
+		private final boolean [][] candidates;
+		private final double [] results;
+		private final int from, to, threshold;
+		
+		BatchTask( boolean [][] candidates, double [] results, int from, int to, int threshold ) {
+			this.candidates = candidates;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if( to - from <= threshold ) {
+				evaluateRange( candidates, results, from, to );
+			}
+			else {
+				final int mid = ( from + to ) >>> 1;
+				invokeAll( new BatchTask( candidates, results, from, mid, threshold ), 
+					new BatchTask( candidates, results, mid, to, threshold ) );
+			}
+		}
+	}
+	
+	private void evaluateInChunks( final boolean [][] candidates, final double [] results, int count, Executor executor ) {
+		final int numChunks = Math.min( count, 4 * Runtime.getRuntime().availableProcessors() );
+		List< FutureTask< Void > > chunks = new ArrayList< FutureTask< Void > >();
+		for( int c=0; c<numChunks; ++c ) {
+			final int from = (int)( (long)count * c / numChunks );
+			final int to = (int)( (long)count * ( c + 1 ) / numChunks );
+			FutureTask< Void > chunk = new FutureTask< Void >( new Runnable() {
+				@Override
+				public void run() {
+					evaluateRange( candidates, results, from, to );
+				}
+			}, null );
+			executor.execute( chunk );
+			chunks.add( chunk );
+		}
+		
+		try {
+			for( FutureTask< Void > chunk : chunks )
+				chunk.get();
+		}
+		catch( InterruptedException ex ) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException( ex );
 		}
-		else if( timingMode == TimingMode.TESTING ) {
-			if( timeNow > CBBOC.testingEndTime )
-				throw new CBBOC.TimeExceededException();
+		catch( ExecutionException ex ) {
+			if( ex.getCause() instanceof RuntimeException )
+				throw (RuntimeException)ex.getCause();
+			throw new IllegalStateException( ex.getCause() );
 		}
-		else {
-			throw new IllegalStateException();
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Starts an incremental evaluation session whose incumbent is a copy of initial.
+	 * Evaluating initial is charged as usual.
+	 */
+	
+	public FlipSession newFlipSession( boolean [] initial ) {
+		return new AdjacencySession( initial );
+	}
+	
+	/**
+	 * As newFlipSession, but with the flip deltas of all variables maintained from the 
+	 * Walsh decomposition of the instance (built on first use), see WalshSession.
+	 */
+	
+	public WalshSession newWalshSession( boolean [] initial ) {
+		return new WalshScoreSession( initial );
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Called by the harness immediately before this instance is handed to the competitor. 
+	 * Until then, a timed instance behaves as if its time had run out.
+	 */
+	
+	void startDeadline( Deadline deadline ) {
+		assert timingMode != TimingMode.UNTIMED;
+		final ImprovementTrace t = trace;
+		if( t != null )
+			t.start( getRemainingEvaluations() );
+		this.deadline = deadline;
+	}
+	
+	/**
+	 * Records each subsequent improvement of the best value, keeping the latest capacity of them.
+	 * For timed instances, the trace is restarted when the harness starts the deadline.
+	 */
+	
+	public void enableTrace( int capacity ) {
+		trace = new ImprovementTrace( capacity, getRemainingEvaluations() );
+	}
+	
+	private void checkTime() {
+		if( timingMode != TimingMode.UNTIMED && deadline.hasExpired() )
+			throw new CBBOC.TimeExceededException();
+	}
+	
+	private void checkEvaluations() {
+		if( remainingEvaluations.get() <= 0 )
+			throw new CBBOC.EvaluationsExceededException();
+	}
+	
+	/**
+	 * Atomically charges min( n, remaining ) evaluations against the budget.
+	 * @return the number of evaluations remaining before the charge  
+	 * @throws CBBOC.EvaluationsExceededException if the budget is already exhausted
+	 */
+	
+	private long chargeEvaluations( long n ) {
+		while( true ) {
+			final long remainingBefore = remainingEvaluations.get();
+			if( remainingBefore <= 0 )
+				throw new CBBOC.EvaluationsExceededException();
+			
+			if( remainingEvaluations.compareAndSet( remainingBefore, remainingBefore - Math.min( n, remainingBefore ) ) )
+				return remainingBefore;
 		}
+	}
+	
+	/**
+	 * Must be called with bestLock held. 
+	 * We are maximizing... ties go to the earlier evaluation, as they would serially.
+	 */
+	
+	private boolean improvesOnBest( double value, long remainingAtValue ) {
+		assert Thread.holdsLock( bestLock );
+		return remainingEvaluationsAtBestValue < 0 || value > bestValue || 
+			( value == bestValue && remainingAtValue > remainingEvaluationsAtBestValue );
+	}
+	
+	private void setBest( double value, long remainingAtValue ) {
+		assert Thread.holdsLock( bestLock );
+		bestValue = value;
+		remainingEvaluationsAtBestValue = remainingAtValue;
+		if( bestCandidate == null )
+			bestCandidate = new boolean [ getNumGenes() ];
+		
+		final ImprovementTrace t = trace;
+		if( t != null )
+			t.record( value, remainingAtValue );
+	}
+	
+	/**
+	 * Records candidate (with variable flipped negated, if it is non-negative) if it is a new best.
+	 */
+	
+	private void recordBest( double value, long remainingAtValue, boolean [] candidate, int flipped ) {
+		if( value < bestValue )
+			return;
+		
+		synchronized( bestLock ) {
+			if( !improvesOnBest( value, remainingAtValue ) )
+				return;
+			
+			setBest( value, remainingAtValue );
+			System.arraycopy( candidate, 0, bestCandidate, 0, bestCandidate.length );
+			if( flipped >= 0 )
+				bestCandidate[ flipped ] = !bestCandidate[ flipped ];
+		}
+	}
+	
+	private void recordBest( double value, long remainingAtValue, long [] packedCandidate ) {
+		if( value < bestValue )
+			return;
+		
+		synchronized( bestLock ) {
+			if( !improvesOnBest( value, remainingAtValue ) )
+				return;
+			
+			setBest( value, remainingAtValue );
+			PackedBits.toBooleans( packedCandidate, bestCandidate );
+		}
+	}
+
+	/**
+	 * Records the best of values[ 0 ... count-1 ], where values[ i ] 
+	 * was the ( i+1 )th evaluation charged from remainingBefore. 
+	 */
+	
+	private void recordBest( boolean [][] candidates, double [] values, int count, long remainingBefore ) {
+		if( count == 0 )
+			return;
+		
+		// When tracing, every improvement within the batch is recorded, not just the last:
+		final boolean tracing = trace != null;
+		int bestIndex = 0;
+		for( int i=1; i<count; ++i ) {
+			if( values[ i ] > values[ bestIndex ] ) {
+				if( tracing )
+					recordBest( values[ bestIndex ], remainingBefore - ( bestIndex + 1 ), candidates[ bestIndex ], -1 );
+				bestIndex = i;
+			}
+		}
+		
+		recordBest( values[ bestIndex ], remainingBefore - ( bestIndex + 1 ), candidates[ bestIndex ], -1 );
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Uses the variable-to-subfunction adjacency of the instance, so that probing or 
+	 * committing a flip costs O(deg) table lookups rather than a full O(M*K) evaluation.  
+	 */
+	
+	private final class AdjacencySession implements FlipSession {
+		
+		private final boolean [] incumbent;
+		private final int [] fnTableIndices;
+		private double incumbentValue;
+		
+		private int lastProbeIndex = -1;
+		private double lastProbeValue;
 		
 		///////////////////////////
 		
-		if( remainingEvaluations.getValue() <= 0 ) {
-			throw new CBBOC.EvaluationsExceededException();
+		AdjacencySession( boolean [] initial ) {
+			this.incumbent = new boolean [ instance.getNumGenes() ];
+			this.fnTableIndices = new int [ instance.getNumSubfunctions() ];
+			restart( initial );
 		}
-		else {
-			final double value = instance.value( candidate );
-			remainingEvaluations.setValue( remainingEvaluations.getValue() - 1 );
+		
+		///////////////////////////
+		
+		@Override
+		public int getNumGenes() { return incumbent.length; }
+		
+		@Override
+		public double value() { return incumbentValue; }
+		
+		@Override
+		public boolean get( int index ) { return incumbent[ index ]; }
+		
+		@Override
+		public boolean [] getIncumbent() { return incumbent.clone(); }
+		
+		///////////////////////////
+		
+		@Override
+		public double valueIfFlipped( int index ) {
+			if( index < 0 || index >= incumbent.length )
+				throw new IllegalArgumentException( "index in range [0," + incumbent.length + ") expected, found " + index );
 			
-			// We are maximizing...
-			if( remainingEvaluationsAtBestValue == null || value > remainingEvaluationsAtBestValue.getRight() )
-				remainingEvaluationsAtBestValue = Pair.of( getRemainingEvaluations(), value );
+			checkTime();
+			if( index == lastProbeIndex )
+				return lastProbeValue;
+			checkEvaluations();
+			
+			final double value = incumbentValue + instance.flipDelta( fnTableIndices, index );
+			recordBest( value, chargeEvaluations( 1 ) - 1, incumbent, index );
+			
+			lastProbeIndex = index;
+			lastProbeValue = value;
+			return value;
+		}
+		
+		@Override
+		public double flip( int index ) {
+			final double value = valueIfFlipped( index );
+			
+			instance.flip( fnTableIndices, index );
+			incumbent[ index ] = !incumbent[ index ];
+			incumbentValue = value;
+			lastProbeIndex = -1;
+			return value;
+		}
+		
+		@Override
+		public double restart( boolean [] candidate ) {
+			if( candidate.length != incumbent.length )
+				throw new IllegalArgumentException( "candidate of length " + incumbent.length + " expected, found " + candidate.length );
 
+			checkTime();
+			checkEvaluations();
+			
+			System.arraycopy( candidate, 0, incumbent, 0, incumbent.length );
+			incumbentValue = instance.value( incumbent, fnTableIndices );
+			recordBest( incumbentValue, chargeEvaluations( 1 ) - 1, incumbent, -1 );
+			
+			lastProbeIndex = -1;
+			return incumbentValue;
+		}
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Keeps the Walsh score of every variable, so that each flip delta is an O(1) lookup 
+	 * and committing a flip costs O(sum of the sizes of the Walsh terms containing it).  
+	 */
+	
+	private final class WalshScoreSession implements WalshSession {
+		
+		private final WalshDecomposition walsh;
+		private final boolean [] incumbent;
+		private final boolean [] termOdd;
+		private final double [] scores;
+		private double incumbentValue;
+		
+		private int lastProbeIndex = -1;
+		private double lastProbeValue;
+		
+		///////////////////////////
+		
+		WalshScoreSession( boolean [] initial ) {
+			this.walsh = instance.getWalshDecomposition();
+			this.incumbent = new boolean [ instance.getNumGenes() ];
+			this.termOdd = new boolean [ walsh.getNumTerms() ];
+			this.scores = new double [ instance.getNumGenes() ];
+			restart( initial );
+		}
+		
+		///////////////////////////
+		
+		@Override
+		public int getNumGenes() { return incumbent.length; }
+		
+		@Override
+		public double value() { return incumbentValue; }
+		
+		@Override
+		public boolean get( int index ) { return incumbent[ index ]; }
+		
+		@Override
+		public boolean [] getIncumbent() { return incumbent.clone(); }
+		
+		///////////////////////////
+		
+		@Override
+		public double valueIfFlipped( int index ) {
+			if( index < 0 || index >= incumbent.length )
+				throw new IllegalArgumentException( "index in range [0," + incumbent.length + ") expected, found " + index );
+			
+			checkTime();
+			if( index == lastProbeIndex )
+				return lastProbeValue;
+			checkEvaluations();
+			
+			final double value = incumbentValue + WalshDecomposition.flipDelta( scores, index );
+			recordBest( value, chargeEvaluations( 1 ) - 1, incumbent, index );
+			
+			lastProbeIndex = index;
+			lastProbeValue = value;
+			return value;
+		}
+		
+		@Override
+		public int bestFlip() {
+			checkTime();
+			
+			final long remainingBefore = chargeEvaluations( incumbent.length );
+			final int numGranted = (int)Math.min( incumbent.length, remainingBefore );
+			
+			// The neighbours are taken to be evaluated in index order:
+			int best = 0;
+			for( int i=1; i<numGranted; ++i )
+				if( scores[ i ] < scores[ best ] )
+					best = i;
+			
+			final double value = incumbentValue + WalshDecomposition.flipDelta( scores, best );
+			recordBest( value, remainingBefore - ( best + 1 ), incumbent, best );
+			
+			lastProbeIndex = best;
+			lastProbeValue = value;
+			
+			if( numGranted < incumbent.length )
+				throw new CBBOC.EvaluationsExceededException();
+			
+			return best;
+		}
+		
+		@Override
+		public double flip( int index ) {
+			final double value = valueIfFlipped( index );
+			
+			walsh.flip( termOdd, scores, index );
+			incumbent[ index ] = !incumbent[ index ];
+			incumbentValue = value;
+			lastProbeIndex = -1;
 			return value;
 		}
+		
+		@Override
+		public double restart( boolean [] candidate ) {
+			if( candidate.length != incumbent.length )
+				throw new IllegalArgumentException( "candidate of length " + incumbent.length + " expected, found " + candidate.length );
+
+			checkTime();
+			checkEvaluations();
+			
+			System.arraycopy( candidate, 0, incumbent, 0, incumbent.length );
+			incumbentValue = walsh.value( incumbent, termOdd, scores );
+			recordBest( incumbentValue, chargeEvaluations( 1 ) - 1, incumbent, -1 );
+			
+			lastProbeIndex = -1;
+			return incumbentValue;
+		}
 	}
 	
 	///////////////////////////////
 
+	/**
+	 * @return ( -1, -1.0 ) if nothing has been evaluated yet.
+	 */
+	
 	public Pair< Long, Double > getRemainingEvaluationsAtBestValue() {
-		if( remainingEvaluationsAtBestValue == null )
-			return Pair.of( -1L, -1.0 );
-		else
-			return remainingEvaluationsAtBestValue;
+		synchronized( bestLock ) {
+			if( remainingEvaluationsAtBestValue < 0 )
+				return Pair.of( -1L, -1.0 );
+			else
+				return Pair.of( remainingEvaluationsAtBestValue, bestValue );
+		}
+	}
+	
+	/**
+	 * @return a copy of the first candidate found with the best value, or null if nothing has been evaluated yet.
+	 */
+	
+	public boolean [] getBestCandidate() {
+		synchronized( bestLock ) {
+			return bestCandidate == null ? null : bestCandidate.clone();
+		}
 	}
 	
+	/**
+	 * @return the improvement trace, or null if tracing is not enabled (see -Dcbboc.traceCapacity). 
+	 */
+	
+	public ImprovementTrace getTrace() { return trace; }
+	
 	public int getNumGenes() { return instance.getNumGenes(); }	
-	public long getRemainingEvaluations() { return remainingEvaluations.getValue(); }
+	public long getRemainingEvaluations() { return remainingEvaluations.get(); }
 	public long getMaxEvalsPerInstance() { return instance.getMaxEvalsPerInstance(); }	
 	
 	///////////////////////////////	
@@ -81,15 +596,9 @@ public final class ObjectiveFn {
 		// return ToStringBuilder.reflectionToString( this );
 		String result = "ObjectiveFn(numGenes:" + getNumGenes(); 
 		result += ",remainingEvaluations: " + getRemainingEvaluations();
-		if( remainingEvaluationsAtBestValue == null ) {
-			result += ",remainingEvaluationsAtBestValue: -1"; 
-			result += ",bestValue: -1.0";
-		}
-		// if( remainingEvaluationsAtBestValue != null ) 
-		else {
-			result += ",remainingEvaluationsAtBestValue: " + remainingEvaluationsAtBestValue.getLeft(); 
-			result += ",bestValue: " + remainingEvaluationsAtBestValue.getRight();
-		}
+		final Pair< Long, Double > best = getRemainingEvaluationsAtBestValue();
+		result += ",remainingEvaluationsAtBestValue: " + best.getLeft(); 
+		result += ",bestValue: " + best.getRight();
 		result += ",timingMode: " + timingMode + ")";
 		return result;
 	}
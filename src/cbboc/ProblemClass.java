@@ -1,35 +1,58 @@
 package cbboc;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
-
-import jeep.lang.Diag;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
-import org.apache.commons.lang3.mutable.MutableLong;
-import org.apache.commons.lang3.tuple.Pair;
-
-import com.google.gson.Gson;
 
-public final class ProblemClass {
+import cbboc.util.DaemonThreadFactory;
 
+public final class ProblemClass implements Closeable {
+	
+	/**
+	 * EAGER loads every instance (in parallel) before the constructor returns.
+	 * LAZY_TESTING loads the training instances eagerly, but parses each testing 
+	 * instance on a background thread a few instances ahead of the one being requested 
+	 * from getTestingInstances(), so that loading overlaps with the competitor's work.
+	 */
+	
+	public enum Loading {
+		EAGER, LAZY_TESTING
+	};
+	
+	private static final int LAZY_LOOKAHEAD = 2;
+	
+	///////////////////////////////
+	
 	private TrainingCategory trainingCategory;
 	private final List< ObjectiveFn > training = new ArrayList< ObjectiveFn >();	
-	private final List< ObjectiveFn > testing  = new ArrayList< ObjectiveFn >();
+	private final List< ObjectiveFn > testing;
 	
 	///////////////////////////////
-
-	private static List< String > 
+	
+	static List< String > 
 	readInstances( File testingFilesTxt ) throws IOException {	
 		if( !testingFilesTxt.exists() )
 			throw new IllegalArgumentException();
@@ -37,18 +60,18 @@ public final class ProblemClass {
 		InputStream is = new FileInputStream( testingFilesTxt );
 		LineNumberReader r = new LineNumberReader( 
 			new BufferedReader( new InputStreamReader( is ) ) );
-
-		String line = r.readLine();
-		Scanner scanner = new Scanner( line );
-		final int numInstances;
-		try {
-			numInstances = scanner.nextInt();
-		}
-		finally {
-			scanner.close();			
-		}
 		
 		try {
+			String line = r.readLine();
+			Scanner scanner = new Scanner( line );
+			final int numInstances;
+			try {
+				numInstances = scanner.nextInt();
+			}
+			finally {
+				scanner.close();			
+			}
+		
 			List< String > result = new ArrayList< String >();
 			for( int i=0; i<numInstances; ++i )
 				result.add( r.readLine() );				
@@ -63,7 +86,106 @@ public final class ProblemClass {
 	
 	///////////////////////////////	
 	
+	/**
+	 * Instance files are text unless listed with the binary extension 
+	 * (as produced by BinaryConverter), in which case they are memory-mapped.
+	 */
+	
+	private static ProblemInstance loadInstance( Path root, String file ) throws IOException {
+		if( file.endsWith( ProblemInstance.BINARY_FILE_EXTENSION ) )
+			return ProblemInstance.readBinary( root.resolve( file ) );
+		
+		InputStream is = new FileInputStream( root + "/" + file );
+		try {
+			return new ProblemInstance( is );
+		}
+		finally {
+			is.close();
+		}
+	}
+	
+	/**
+	 * Instances are drawn from InstanceCache, so they are shared between runs in the same JVM.
+	 */
+	
+	private static Callable< ProblemInstance > loadTask( final Path root, final String file ) {
+		return new Callable< ProblemInstance >() {
+			@Override
+			public ProblemInstance call() throws IOException {
+				return InstanceCache.get( root.resolve( file ), new Callable< ProblemInstance >() {
+					@Override
+					public ProblemInstance call() throws IOException {
+						return loadInstance( root, file );
+					}
+				} );
+			}
+		};
+	}
+	
+	private static < T > T await( Future< T > future ) throws IOException {
+		try {
+			return future.get();
+		}
+		catch( InterruptedException ex ) {
+			Thread.currentThread().interrupt();
+			throw new IOException( "interrupted while loading instances", ex );
+		}
+		catch( ExecutionException ex ) {
+			if( ex.getCause() instanceof IOException )
+				throw (IOException)ex.getCause();
+			if( ex.getCause() instanceof RuntimeException )
+				throw (RuntimeException)ex.getCause();
+			throw new IllegalStateException( ex.getCause() );
+		}
+	}
+	
+	/**
+	 * Loads the given files on a pool of at most one thread per processor, preserving their order.
+	 */
+	
+	private static List< ProblemInstance > loadInParallel( Path root, List< String > files ) throws IOException {
+		List< ProblemInstance > result = new ArrayList< ProblemInstance >();
+		if( files.isEmpty() )
+			return result;
+		
+		final int numThreads = Math.min( files.size(), Runtime.getRuntime().availableProcessors() );
+		ExecutorService pool = Executors.newFixedThreadPool( numThreads, new DaemonThreadFactory( "CBBOC-loader" ) );
+		try {
+			List< Future< ProblemInstance > > futures = new ArrayList< Future< ProblemInstance > >();
+			for( String f : files )
+				futures.add( pool.submit( loadTask( root, f ) ) );
+			
+			for( Future< ProblemInstance > f : futures )
+				result.add( await( f ) );
+			
+			return result;
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	private static ObjectiveFn testingObjectiveFn( ProblemInstance p ) {
+		AtomicLong individualTestingEvaluations = new AtomicLong( p.getMaxEvalsPerInstance() );			
+		return new ObjectiveFn( p, ObjectiveFn.TimingMode.TESTING, individualTestingEvaluations );
+	}
+	
+	///////////////////////////////	
+	
 	public ProblemClass( Path root, TrainingCategory trainingCategory ) throws IOException {
+		this( root, trainingCategory, Loading.EAGER );
+	}
+	
+	public ProblemClass( Path root, TrainingCategory trainingCategory, Loading loading ) throws IOException {
+		this( root, trainingCategory, loading, new BitSet() );
+	}
+	
+	/**
+	 * As above, where the testing instances at indices in skippedTesting (e.g. those already 
+	 * recorded by a resumed run) will not be requested, so are not loaded in the background. 
+	 */
+	
+	public ProblemClass( Path root, TrainingCategory trainingCategory, Loading loading, BitSet skippedTesting ) throws IOException {
 		
 		this.trainingCategory = trainingCategory;
 		File trainingFilesInventory = new File( root + "/trainingFiles.txt" );
@@ -79,14 +201,18 @@ public final class ProblemClass {
 		
 		///////////////////////////
 		
+		// Start on the testing instances first, so that they load behind the training ones:
+		LazyTestingInstances lazyTesting = null;
+		if( loading == Loading.LAZY_TESTING )
+			lazyTesting = new LazyTestingInstances( root, testingFiles, skippedTesting );
+		
 		List< ProblemInstance > trainingInstances = new ArrayList< ProblemInstance >();		
 		switch( trainingCategory ) {
 			case NONE : // Intentionally Empty
 			break;		
 			case SHORT :
 			case LONG :				
-				for( String s : trainingFiles )
-				trainingInstances.add( new ProblemInstance( new FileInputStream( root + "/" + s ) ) );
+				trainingInstances = loadInParallel( root, trainingFiles );
 				break;		
 		}
 		
@@ -98,20 +224,121 @@ public final class ProblemClass {
 		
 		///////////////////////////
 		
-		MutableLong sharedTrainingEvaluations = new MutableLong( totalTrainingEvaluations ); 
+		AtomicLong sharedTrainingEvaluations = new AtomicLong( totalTrainingEvaluations ); 
 		for( ProblemInstance p : trainingInstances )
 			training.add( new ObjectiveFn( p, ObjectiveFn.TimingMode.TRAINING, sharedTrainingEvaluations ) );
-
+		
 		///////////////////////////
-
-		List< ProblemInstance > testingInstances = new ArrayList< ProblemInstance >();
-		for( String f : testingFiles )
-			testingInstances.add( new ProblemInstance( new FileInputStream( root + "/" + f ) ) );
 		
-		for( ProblemInstance p : testingInstances ) {
-			MutableLong individualTestingEvaluations = new MutableLong( p.getMaxEvalsPerInstance() );			
-			testing.add( new ObjectiveFn( p, ObjectiveFn.TimingMode.TESTING, individualTestingEvaluations ) );
+		if( lazyTesting != null ) {
+			testing = lazyTesting;
+		}
+		else {
+			testing = new ArrayList< ObjectiveFn >();
+			for( ProblemInstance p : loadInParallel( root, testingFiles ) )
+				testing.add( testingObjectiveFn( p ) );
+		}
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Read-only view of the testing instances in which get( i ) waits for instance i 
+	 * to be loaded, and schedules the next LAZY_LOOKAHEAD instances which are not skipped
+	 * on a background thread. Skipped instances are only loaded if requested, and
+	 * instances requested once the loader has been shut down are loaded by the caller. 
+	 */
+	
+	private static final class LazyTestingInstances extends AbstractList< ObjectiveFn > {
+		
+		private final Path root;
+		private final List< String > files;
+		private final BitSet skipped;
+		private final List< Future< ObjectiveFn > > loaded;
+		private final ExecutorService loader = Executors.newSingleThreadExecutor( 
+			new DaemonThreadFactory( "CBBOC-lazy-loader" ) );
+		
+		///////////////////////////
+		
+		LazyTestingInstances( Path root, List< String > files, BitSet skipped ) {
+			this.root = root;
+			this.files = files;
+			this.skipped = (BitSet)skipped.clone();
+			this.loaded = new ArrayList< Future< ObjectiveFn > >( Collections.< Future< ObjectiveFn > >nCopies( files.size(), null ) );
+			scheduleAfter( -1 );
+		}
+		
+		private synchronized Future< ObjectiveFn > schedule( int index ) {
+			Future< ObjectiveFn > result = loaded.get( index );
+			if( result == null ) {
+				final Callable< ProblemInstance > task = loadTask( root, files.get( index ) );
+				final Callable< ObjectiveFn > load = new Callable< ObjectiveFn >() {
+					@Override
+					public ObjectiveFn call() throws Exception {
+						return testingObjectiveFn( task.call() );
+					}
+				};
+				
+				if( loader.isShutdown() ) {
+					FutureTask< ObjectiveFn > inline = new FutureTask< ObjectiveFn >( load );
+					inline.run();
+					result = inline;
+				}
+				else {
+					result = loader.submit( load );
+				}
+				loaded.set( index, result );
+			}
+			return result;
+		}
+		
+		/**
+		 * Schedules the next LAZY_LOOKAHEAD instances after index which are not skipped,
+		 * and shuts the loader down once there are none left. 
+		 */
+		
+		private synchronized void scheduleAfter( int index ) {
+			int i = skipped.nextClearBit( index + 1 );
+			for( int n=0; n<LAZY_LOOKAHEAD && i<files.size(); ++n, i = skipped.nextClearBit( i + 1 ) )
+				schedule( i );
+			
+			if( i >= files.size() )
+				loader.shutdown();
+		}
+		
+		/**
+		 * Stops the loader, discarding any loads in progress or pending.
+		 */
+		
+		synchronized void close() {
+			loader.shutdownNow();
+			for( int i=0; i<loaded.size(); ++i ) {
+				if( loaded.get( i ) != null && !loaded.get( i ).isDone() ) {
+					loaded.get( i ).cancel( true );
+					loaded.set( i, null );
+				}
+			}
+		}
+		
+		///////////////////////////
+		
+		@Override
+		public ObjectiveFn get( int index ) {
+			if( index < 0 || index >= files.size() )
+				throw new IndexOutOfBoundsException( "index in range [0," + files.size() + ") expected, found " + index );
+			
+			Future< ObjectiveFn > result = schedule( index );
+			scheduleAfter( index );
+			try {
+				return await( result );
+			}
+			catch( IOException ex ) {
+				throw new UncheckedIOException( ex );
+			}
 		}
+		
+		@Override
+		public int size() { return files.size(); }
 	}
 	
 	///////////////////////////////
@@ -120,6 +347,17 @@ public final class ProblemClass {
 	public List< ObjectiveFn > getTrainingInstances() { return training; }
 	public List< ObjectiveFn > getTestingInstances() { return testing; }
 	
+	/**
+	 * Stops any background loading of testing instances (with Loading.LAZY_TESTING), 
+	 * e.g. when testing ends early. Instances requested afterwards are loaded on demand.
+	 */
+	
+	@Override
+	public void close() {
+		if( testing instanceof LazyTestingInstances )
+			( (LazyTestingInstances)testing ).close();
+	}
+	
 	///////////////////////////////	
 	
 	@Override
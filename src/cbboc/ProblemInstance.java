@@ -1,109 +1,345 @@
 package cbboc;
 
-import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Scanner;
-
-import org.apache.commons.lang3.tuple.Pair;
 
 //////////////////////////////////////////////////////////////////////
 
 public final class ProblemInstance {
-
-	private int numGenes;
-	private int maxEvalsPerInstance;
-	private int K;
-
+	
+	private final int numGenes;
+	private final int maxEvalsPerInstance;
+	private final int K;
+	
 	// Change for 2016:
 	// Instead of each file having N+1 rows (header and N functions), 
 	// where N is the number of problem variables, each now has M+1 rows, 
 	// with the value of M added to the end of the header.
-	private int M;
+	private final int M;
+	
+	// Compiled, contiguous layout of the M subfunctions: 
+	// subfunction i reads variables varIndices[ i*K ... i*K + K-1 ] 
+	// and looks up its value in tables[ i*2^K ... i*2^K + 2^K-1 ].
+	private final int [] varIndices;
+	private final double [] tables;
 	
-	private List< Pair< int [], double [] > 
-		> data = new ArrayList< Pair< int [], double [] > >();
+	// Variable-to-subfunction adjacency in compressed row form: 
+	// the subfunctions that read variable v are adjacentFns[ adjacencyStart[ v ] ... adjacencyStart[ v+1 ]-1 ], 
+	// and adjacentMasks holds the bit(s) of their table index that v controls.
+	private final int [] adjacencyStart;
+	private final int [] adjacentFns;
+	private final int [] adjacentMasks;
+	
+	// Built on first use by a WalshSession, then shared:
+	private volatile WalshDecomposition walshDecomposition = null;
+	
+	///////////////////////////////
+	
+	// Binary instance format (little-endian): 
+	// magic, version, numGenes, maxEvalsPerInstance, K, M, 
+	// then the M*K variable indices as ints and the M*2^K table entries as doubles. 
+	
+	public static final String BINARY_FILE_EXTENSION = ".bin";
+	private static final int BINARY_MAGIC = 0x43424243; // "CBBC"
+	private static final int BINARY_VERSION = 1;
+	private static final int BINARY_HEADER_BYTES = 6 * 4;
 	
 	///////////////////////////////
 	
 	public ProblemInstance( InputStream is ) throws IOException {
-		LineNumberReader r = new LineNumberReader( 
-				new BufferedReader( new InputStreamReader( is ) ) );
+		InstanceTokenizer t = new InstanceTokenizer( is );
+		
+		numGenes = t.nextInt();
+		maxEvalsPerInstance = t.nextInt();
+		
+		// Previously the number of variables in each row was given by the third value in the header, such that if that value was K, each row had K+1 variables. I've changed this such that the third value now directly says how many variables are in each row.
+		K = t.nextInt();
+		
+		M = t.nextInt();
+		t.nextLine();
+	
+		final int numRows = M;
+		final int numFks = 1 << K;
+		varIndices = new int [ numRows * K ];
+		tables = new double [ numRows * numFks ];
+		for( int i=0; i<numRows; ++i ) {			
+			for( int j=0; j<K; ++j )
+				varIndices[ i * K + j ] = t.nextInt();
 			
-		Scanner s = null;
+			for( int j=0; j<numFks; ++j )
+				tables[ i * numFks + j ] = t.nextDouble();
+			
+			t.nextLine();
+		}
+		
+		adjacencyStart = new int [ numGenes + 1 ];
+		adjacentFns = new int [ countAdjacencies( varIndices, K, numGenes, adjacencyStart ) ];
+		adjacentMasks = new int [ adjacentFns.length ];
+		fillAdjacencies( varIndices, K, numGenes, adjacencyStart, adjacentFns, adjacentMasks );
+		
+		assert( invariant() );
+	}
+	
+	private ProblemInstance( ByteBuffer binary ) throws IOException {
+		binary.order( ByteOrder.LITTLE_ENDIAN );
+		if( binary.remaining() < BINARY_HEADER_BYTES || binary.getInt() != BINARY_MAGIC )
+			throw new IOException( "not a binary CBBOC instance" );
+		final int version = binary.getInt(); 
+		if( version != BINARY_VERSION )
+			throw new IOException( "binary CBBOC instance version " + BINARY_VERSION + " expected, found " + version );
 		
+		numGenes = binary.getInt();
+		maxEvalsPerInstance = binary.getInt();
+		K = binary.getInt();
+		M = binary.getInt();
+		
+		final long expectedBytes = (long)M * K * 4 + ( (long)M << K ) * 8;
+		if( K < 0 || K > 30 || M < 0 || binary.remaining() != expectedBytes )
+			throw new IOException( "binary CBBOC instance of " + ( BINARY_HEADER_BYTES + expectedBytes ) + " bytes expected, found " + binary.limit() );
+		
+		varIndices = new int [ M * K ];
+		binary.asIntBuffer().get( varIndices );
+		binary.position( binary.position() + varIndices.length * 4 );
+		tables = new double [ M << K ];
+		binary.asDoubleBuffer().get( tables );
+		
+		adjacencyStart = new int [ numGenes + 1 ];
+		adjacentFns = new int [ countAdjacencies( varIndices, K, numGenes, adjacencyStart ) ];
+		adjacentMasks = new int [ adjacentFns.length ];
+		fillAdjacencies( varIndices, K, numGenes, adjacencyStart, adjacentFns, adjacentMasks );
+		
+		assert( invariant() );
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Loads an instance written by writeBinary(), by memory-mapping the file 
+	 * and bulk-copying the index and table blocks.
+	 */
+	
+	public static ProblemInstance readBinary( Path path ) throws IOException {
+		FileChannel channel = FileChannel.open( path, StandardOpenOption.READ );
 		try {
-			String line = r.readLine();
-			s = new Scanner( line );
-
-			numGenes = s.nextInt();
-			maxEvalsPerInstance = s.nextInt();
-
-			// Previously the number of variables in each row was given by the third value in the header, such that if that value was K, each row had K+1 variables. I've changed this such that the third value now directly says how many variables are in each row.
-			K = s.nextInt();
-			
-			M = s.nextInt();			
-		
-			final int numRows = M;
-			for( int i=0; i<numRows; ++i ) {			
-				line = r.readLine();
-				
-				s = new Scanner( line );
-				
-				int [] iarray = new int [ K ];
-				for( int j=0; j<K; ++j )
-					iarray[ j ] = s.nextInt();
-
-				final int numFks = 1 << K;
-				double [] darray = new double [ numFks ];
-				for( int j=0; j<numFks; ++j )
-					darray[ j ] = s.nextDouble();
-				
-				data.add( Pair.of( iarray, darray ) );
-			}
+			MappedByteBuffer mapped = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+			return new ProblemInstance( mapped );
 		}
 		finally {
-			if( s != null )
-				s.close();
+			channel.close();
 		}
+	}
+	
+	public void writeBinary( Path path ) throws IOException {
+		ByteBuffer binary = ByteBuffer.allocate( BINARY_HEADER_BYTES + varIndices.length * 4 + tables.length * 8 );
+		binary.order( ByteOrder.LITTLE_ENDIAN );
+		binary.putInt( BINARY_MAGIC ).putInt( BINARY_VERSION );
+		binary.putInt( numGenes ).putInt( maxEvalsPerInstance ).putInt( K ).putInt( M );
+		binary.asIntBuffer().put( varIndices );
+		binary.position( binary.position() + varIndices.length * 4 );
+		binary.asDoubleBuffer().put( tables );
+		binary.rewind();
 		
-		assert( invariant() );
+		FileChannel channel = FileChannel.open( path, StandardOpenOption.CREATE, 
+			StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+		try {
+			while( binary.hasRemaining() )
+				channel.write( binary );
+		}
+		finally {
+			channel.close();
+		}
 	}
 	
 	///////////////////////////////
-
+	
+	/**
+	 * Fills adjacencyStart with row offsets and returns the total number of (variable,subfunction) pairs.
+	 * A variable that occurs more than once in the same subfunction is counted once.
+	 */
+	
+	private static int countAdjacencies( int [] varIndices, int k, int numGenes, int [] adjacencyStart ) {
+		int [] lastFn = new int [ numGenes ];
+		Arrays.fill( lastFn, -1 );
+		
+		for( int v=0; v<varIndices.length; ++v ) {
+			final int var = varIndices[ v ];
+			if( var < 0 || var >= numGenes )
+				throw new IllegalArgumentException( "variable index in range [0," + numGenes + ") expected, found " + var );
+			
+			final int fn = v / k;
+			if( lastFn[ var ] != fn ) {
+				lastFn[ var ] = fn;
+				++adjacencyStart[ var + 1 ];
+			}
+		}
+		
+		for( int i=0; i<numGenes; ++i )
+			adjacencyStart[ i + 1 ] += adjacencyStart[ i ];
+		
+		return adjacencyStart[ numGenes ];
+	}
+	
+	private static void fillAdjacencies( int [] varIndices, int k, int numGenes, 
+			int [] adjacencyStart, int [] adjacentFns, int [] adjacentMasks ) {
+		int [] next = Arrays.copyOf( adjacencyStart, numGenes );
+		for( int v=0; v<varIndices.length; ++v ) {
+			final int var = varIndices[ v ];
+			final int fn = v / k;
+			final int mask = 1 << ( k - 1 - v % k );
+			if( next[ var ] > adjacencyStart[ var ] && adjacentFns[ next[ var ] - 1 ] == fn ) {
+				adjacentMasks[ next[ var ] - 1 ] |= mask;
+			}
+			else {
+				adjacentFns[ next[ var ] ] = fn;
+				adjacentMasks[ next[ var ] ] = mask;
+				++next[ var ];
+			}
+		}
+	}
+	
+	///////////////////////////////
+	
 	public int getNumGenes() { return numGenes;	}
 	public int getMaxEvalsPerInstance() { return maxEvalsPerInstance; }
-
+	
+	/**
+	 * Approximate footprint of the lookup tables and adjacency arrays, and of the 
+	 * Walsh decomposition if it has been built, as used by InstanceCache. 
+	 */
+	
+	long sizeInBytes() {
+		final WalshDecomposition walsh = walshDecomposition;
+		return tables.length * 8L + 
+			( varIndices.length + adjacencyStart.length + adjacentFns.length + adjacentMasks.length ) * 4L +
+			( walsh == null ? 0L : walsh.sizeInBytes() );
+	}
+	
 	///////////////////////////////
 	
 	double value( boolean [] candidate ) {
 		if( candidate.length != getNumGenes() )
 			throw new IllegalArgumentException( "candidate of length " + getNumGenes() + " expected, found " + candidate.length );
 		
+		final int [] varIndices = this.varIndices;
+		final double [] tables = this.tables;
+		final int k = K;
+		final int numFks = 1 << k;
+		
+		double total = 0.0;
+		int v = 0;
+		for( int tableOffset = 0; v < varIndices.length; tableOffset += numFks ) {
+			int fnTableIndex = 0;
+			for( int j=0; j<k; ++j ) {
+				fnTableIndex <<= 1;
+				fnTableIndex |= candidate[ varIndices[ v++ ] ] ? 1 : 0;
+			}
+			
+			total += tables[ tableOffset + fnTableIndex ];
+		}
+		
+		return total;
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Evaluates a candidate packed 64 genes to a long, as per cbboc.util.PackedBits. 
+	 */
+	
+	double value( long [] packedCandidate ) {
+		if( packedCandidate.length != ( getNumGenes() + 63 ) >>> 6 )
+			throw new IllegalArgumentException( "packed candidate of length " + ( ( getNumGenes() + 63 ) >>> 6 ) + " expected, found " + packedCandidate.length );
+		
+		final int [] varIndices = this.varIndices;
+		final double [] tables = this.tables;
+		final int k = K;
+		final int numFks = 1 << k;
+		
+		double total = 0.0;
+		int v = 0;
+		for( int tableOffset = 0; v < varIndices.length; tableOffset += numFks ) {
+			int fnTableIndex = 0;
+			for( int j=0; j<k; ++j ) {
+				final int var = varIndices[ v++ ];
+				fnTableIndex = ( fnTableIndex << 1 ) | (int)( ( packedCandidate[ var >>> 6 ] >>> var ) & 1L );
+			}
+			
+			total += tables[ tableOffset + fnTableIndex ];
+		}
+		
+		return total;
+	}
+	
+	///////////////////////////////
+	
+	// Incremental evaluation support: the caller keeps the current table index 
+	// of every subfunction in fnTableIndices (length M), so that the effect 
+	// of flipping a single variable only touches the subfunctions adjacent to it.
+	
+	int getNumSubfunctions() { return M; }
+	
+	double value( boolean [] candidate, int [] fnTableIndices ) {
+		if( candidate.length != getNumGenes() )
+			throw new IllegalArgumentException( "candidate of length " + getNumGenes() + " expected, found " + candidate.length );
+		
+		final int numFks = 1 << K;
 		double total = 0.0;
+		int v = 0;
 		for( int i=0; i<M; ++i ) {
-			int [] varIndices = data.get( i ).getLeft();
 			int fnTableIndex = 0;
-			for( int j=0; j<varIndices.length; ++j ) {
+			for( int j=0; j<K; ++j ) {
 				fnTableIndex <<= 1;
-				fnTableIndex |= candidate[ varIndices[ j ] ] ? 1 : 0;
+				fnTableIndex |= candidate[ varIndices[ v++ ] ] ? 1 : 0;
 			}
 			
-			total += data.get( i ).getRight()[ fnTableIndex ];
+			fnTableIndices[ i ] = fnTableIndex;
+			total += tables[ i * numFks + fnTableIndex ];
 		}
 		
 		return total;
 	}
 	
+	double flipDelta( int [] fnTableIndices, int var ) {
+		final int k = K;
+		double delta = 0.0;
+		for( int a=adjacencyStart[ var ]; a<adjacencyStart[ var + 1 ]; ++a ) {
+			final int fn = adjacentFns[ a ];
+			final int tableOffset = fn << k;
+			final int fnTableIndex = fnTableIndices[ fn ];
+			delta += tables[ tableOffset + ( fnTableIndex ^ adjacentMasks[ a ] ) ] - tables[ tableOffset + fnTableIndex ];
+		}
+		
+		return delta;
+	}
+	
+	void flip( int [] fnTableIndices, int var ) {
+		for( int a=adjacencyStart[ var ]; a<adjacencyStart[ var + 1 ]; ++a )
+			fnTableIndices[ adjacentFns[ a ] ] ^= adjacentMasks[ a ];
+	}
+	
+	///////////////////////////////
+	
+	WalshDecomposition getWalshDecomposition() {
+		WalshDecomposition result = walshDecomposition;
+		if( result == null ) {
+			// Benign race: concurrent first callers may each build an identical decomposition.
+			result = new WalshDecomposition( numGenes, M, K, varIndices, tables );
+			walshDecomposition = result;
+			InstanceCache.recharge( this );
+		}
+		return result;
+	}
+	
 	///////////////////////////////	
-
+	
 	@Override
 	public String toString() {
 		StringBuffer result = new StringBuffer();
@@ -123,10 +359,13 @@ public final class ProblemInstance {
 		result.append( ",maxEvalsPerInstance=" + maxEvalsPerInstance );
 		result.append( ",K=" + K );
 		
+		result.append( ",M=" + M );
+		
+		final int numFks = 1 << K;
 		result.append( ",data=[\n" );		
-		for( int i=0; i<data.size(); ++i ) {
-			result.append( "(" + Arrays.toString( data.get( i ).getLeft() ) );
-			result.append( "," + Arrays.toString( data.get( i ).getRight() ) );
+		for( int i=0; i<M; ++i ) {
+			result.append( "(" + Arrays.toString( Arrays.copyOfRange( varIndices, i * K, ( i + 1 ) * K ) ) );
+			result.append( "," + Arrays.toString( Arrays.copyOfRange( tables, i * numFks, ( i + 1 ) * numFks ) ) );
 			result.append( ")\n" );			
 		}
 		result.append( "]]" );	
@@ -135,9 +374,9 @@ public final class ProblemInstance {
 	
 	///////////////////////////////
 	
-	private static boolean allValidSize( List< Pair< int [], double [] > > data, int k ) {
-		for( Pair< int [], double [] > p : data )
-			if( p.getLeft().length != k || p.getRight().length != 1 << k )
+	private static boolean allValidIndices( int [] varIndices, int numGenes ) {
+		for( int v : varIndices )
+			if( v < 0 || v >= numGenes )
 				return false;
 		
 		return true;
@@ -147,10 +386,14 @@ public final class ProblemInstance {
 		return getNumGenes() > 0 && 
 			getMaxEvalsPerInstance() > 0 &&
 			K > 0 && 
-			data.size() == getNumGenes() &&
-			allValidSize( data, K );
+			M > 0 &&
+			varIndices.length == M * K &&
+			tables.length == M * ( 1 << K ) &&
+			allValidIndices( varIndices, getNumGenes() ) &&
+			adjacencyStart.length == getNumGenes() + 1 &&
+			adjacentFns.length == adjacentMasks.length;
 	}
-
+	
 	///////////////////////////////	
 	
 	public static void main( String [] args ) throws IOException {
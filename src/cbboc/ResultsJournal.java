@@ -0,0 +1,317 @@
+package cbboc;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import cbboc.CBBOC.OutputResults;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Append-only JSON-lines record of a run, written as each phase or testing instance completes,
+ * so that a crash loses at most the instance in progress. Output is buffered, and flushed and
+ * fsynced at each checkpoint (the end of training, and each completed testing instance).
+ *
+ * The journal for a competitor, problem class and training category lives at a fixed path in the 
+ * results directory while the run is in progress, so a run started with resume = true continues an 
+ * unfinished journal: testing instances already recorded are skipped. Training is repeated on 
+ * resumption, since the competitor's learned state is not persisted, and its new records supersede 
+ * the old ones. The testing time is recorded along with each testing instance, so that of an 
+ * interrupted session counts up to its last recorded instance.
+ * When the run completes, the summary is derived from the journal alone, and the journal is
+ * renamed alongside the summary file.
+ */
+
+final class ResultsJournal implements Closeable {
+	
+	static final String JOURNAL_FILE_EXTENSION = ".jsonl";
+	
+	enum RecordType { HEADER, TRAINING, TRAINING_TIME, TESTING, TESTING_TIME };
+	
+	static final class Record {
+		
+		final RecordType type;
+		final String competitorName;
+		final String problemClassName;
+		final int trainingCategory;
+		final String datetime;
+		final int index;
+		final long remainingEvaluations;
+		final long remainingEvaluationsWhenBestReached;
+		final double bestValue;
+		final long wallClockUsage;
+		final ImprovementTrace.Curve trace;
+		
+		///////////////////////////
+		
+		private Record( RecordType type, String competitorName, String problemClassName, int trainingCategory, String datetime,
+			int index, long remainingEvaluations, long remainingEvaluationsWhenBestReached, double bestValue, long wallClockUsage, 
+			ImprovementTrace.Curve trace ) {
+			this.type = type;
+			this.competitorName = competitorName;
+			this.problemClassName = problemClassName;
+			this.trainingCategory = trainingCategory;
+			this.datetime = datetime;
+			this.index = index;
+			this.remainingEvaluations = remainingEvaluations;
+			this.remainingEvaluationsWhenBestReached = remainingEvaluationsWhenBestReached;
+			this.bestValue = bestValue;
+			this.wallClockUsage = wallClockUsage;
+			this.trace = trace;
+		}
+		
+		static Record header( String competitorName, String problemClassName, int trainingCategory, String datetime ) {
+			return new Record( RecordType.HEADER, competitorName, problemClassName, trainingCategory, datetime, -1, 0, 0, 0.0, 0, null );
+		}
+		
+		static Record result( RecordType type, int index, ObjectiveFn fn ) {
+			Pair< Long, Double > p = fn.getRemainingEvaluationsAtBestValue();
+			ImprovementTrace.Curve trace = fn.getTrace() == null ? null : fn.getTrace().toCurve();
+			return new Record( type, null, null, 0, null, index, fn.getRemainingEvaluations(), p.getLeft(), p.getRight(), 0, trace );
+		}
+		
+		static Record time( RecordType type, long wallClockUsage ) {
+			return new Record( type, null, null, 0, null, -1, 0, 0, 0.0, wallClockUsage, null );
+		}
+		
+		OutputResults.Result toResult() {
+			return new OutputResults.Result( remainingEvaluations, remainingEvaluationsWhenBestReached, bestValue, trace );
+		}
+	}
+	
+	///////////////////////////////
+	
+	private final Gson gson = new Gson();
+	private final Path file;
+	private final FileOutputStream os;
+	private final FileLock lock;
+	private final Writer writer;
+	private final List< Record > records;
+	private long testingTimeMark;
+	
+	///////////////////////////////
+	
+	/**
+	 * Opens the journal at file for the run described by header, discarding any previous
+	 * content unless resume is true, in which case previous records for the same competitor,
+	 * class and training category are kept (up to the first incomplete line).
+	 *
+	 * @return null if file is in use by another run.
+	 */
+	
+	static ResultsJournal open( Path file, Record header, boolean resume ) throws IOException {
+		
+		List< Record > previous = new ArrayList< Record >();
+		long validLength = 0;
+		if( resume && Files.exists( file ) )
+			validLength = readRecords( file, previous );
+		
+		if( !previous.isEmpty() ) {
+			Record h = previous.get( 0 );
+			if( h.type != RecordType.HEADER || !h.competitorName.equals( header.competitorName )
+					|| !h.problemClassName.equals( header.problemClassName ) || h.trainingCategory != header.trainingCategory )
+				throw new IllegalStateException( "cannot resume " + file + ": it records a different run" );
+		}
+		
+		FileOutputStream os = new FileOutputStream( file.toFile(), true );
+		FileLock lock;
+		try {
+			lock = os.getChannel().tryLock();
+		}
+		catch( OverlappingFileLockException ex ) {
+			lock = null;
+		}
+		if( lock == null ) {
+			os.close();
+			return null;
+		}
+		
+		os.getChannel().truncate( validLength );
+		ResultsJournal result = new ResultsJournal( file, os, lock, previous );
+		if( previous.isEmpty() ) {
+			result.append( header );
+			result.checkpoint();
+		}
+		return result;
+	}
+	
+	private ResultsJournal( Path file, FileOutputStream os, FileLock lock, List< Record > records ) {
+		this.file = file;
+		this.os = os;
+		this.lock = lock;
+		this.writer = new BufferedWriter( new OutputStreamWriter( os, StandardCharsets.UTF_8 ) );
+		this.records = records;
+	}
+	
+	/**
+	 * @return the length in bytes of the complete, well-formed lines at the start of file.
+	 */
+	
+	private static long readRecords( Path file, List< Record > result ) throws IOException {
+		Gson gson = new Gson();
+		byte [] bytes = Files.readAllBytes( file );
+		int start = 0;
+		for( int i=0; i<bytes.length; ++i ) {
+			if( bytes[ i ] != '\n' )
+				continue;
+			
+			try {
+				Record r = gson.fromJson( new String( bytes, start, i - start, StandardCharsets.UTF_8 ), Record.class );
+				if( r == null || r.type == null )
+					break;
+				result.add( r );
+			}
+			catch( JsonParseException ex ) {
+				break;
+			}
+			start = i + 1;
+		}
+		return start;
+	}
+	
+	///////////////////////////////
+	
+	private void append( Record r ) throws IOException {
+		writer.write( gson.toJson( r ) );
+		writer.write( '\n' );
+		records.add( r );
+	}
+	
+	private void checkpoint() throws IOException {
+		writer.flush();
+		os.getFD().sync();
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * @return the indices of the testing instances already recorded.
+	 */
+	
+	synchronized BitSet completedTesting() {
+		BitSet result = new BitSet();
+		for( Record r : records )
+			if( r.type == RecordType.TESTING )
+				result.set( r.index );
+		
+		return result;
+	}
+	
+	synchronized void recordTraining( List< ObjectiveFn > fns, long wallClockUsage ) throws IOException {
+		for( int i=0; i<fns.size(); ++i )
+			append( Record.result( RecordType.TRAINING, i, fns.get( i ) ) );
+		append( Record.time( RecordType.TRAINING_TIME, wallClockUsage ) );
+		checkpoint();
+	}
+	
+	/**
+	 * Starts timing this session's testing: each subsequent record of a testing instance 
+	 * (and recordTestingTime()) is preceded by the testing time since the previous one.  
+	 * The testing time of a resumed run is the sum of that of all sessions.
+	 */
+	
+	synchronized void startTesting() {
+		testingTimeMark = System.currentTimeMillis();
+	}
+	
+	synchronized void recordTesting( int index, ObjectiveFn fn ) throws IOException {
+		appendTestingTime();
+		append( Record.result( RecordType.TESTING, index, fn ) );
+		checkpoint();
+	}
+	
+	/**
+	 * Records the testing time since the last instance recorded, at the end of the session.
+	 */
+	
+	synchronized void recordTestingTime() throws IOException {
+		appendTestingTime();
+		checkpoint();
+	}
+	
+	private void appendTestingTime() throws IOException {
+		final long now = System.currentTimeMillis();
+		append( Record.time( RecordType.TESTING_TIME, now - testingTimeMark ) );
+		testingTimeMark = now;
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * @return the results as recorded in the journal file (re-read from disk), with
+	 * the latest record for each instance taking precedence.
+	 */
+	
+	synchronized OutputResults summary() throws IOException {
+		checkpoint();
+		
+		List< Record > persisted = new ArrayList< Record >();
+		readRecords( file, persisted );
+		
+		Record header = persisted.get( 0 );
+		TreeMap< Integer, OutputResults.Result > training = new TreeMap< Integer, OutputResults.Result >();
+		TreeMap< Integer, OutputResults.Result > testing = new TreeMap< Integer, OutputResults.Result >();
+		long trainingWallClockUsage = 0;
+		long testingWallClockUsage = 0;
+		for( Record r : persisted ) {
+			switch( r.type ) {
+				case HEADER : // Intentionally Empty
+				break;
+				case TRAINING : training.put( r.index, r.toResult() ); break;
+				case TRAINING_TIME : trainingWallClockUsage = r.wallClockUsage; break;
+				case TESTING : testing.put( r.index, r.toResult() ); break;
+				case TESTING_TIME : testingWallClockUsage += r.wallClockUsage; break;
+				default :
+					throw new IllegalStateException();
+			}
+		}
+		
+		return new OutputResults( header.competitorName, header.datetime, header.problemClassName, header.trainingCategory,
+			new ArrayList< OutputResults.Result >( training.values() ), trainingWallClockUsage,
+			new ArrayList< OutputResults.Result >( testing.values() ), testingWallClockUsage );
+	}
+	
+	/**
+	 * Closes the journal and moves it to dest.
+	 */
+	
+	synchronized void closeAndMove( Path dest ) throws IOException {
+		close();
+		Files.move( file, dest, StandardCopyOption.REPLACE_EXISTING );
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		if( !lock.isValid() )
+			return;
+		
+		try {
+			checkpoint();
+			lock.release();
+		}
+		finally {
+			writer.close();
+		}
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,305 @@
+package cbboc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import com.google.gson.Gson;
+
+import cbboc.CBBOC.OutputResults;
+import cbboc.CBBOC.OutputResults.ResultStats;
+import cbboc.util.DaemonThreadFactory;
+import cbboc.util.RNG;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Runs every competitor against every problem class a given number of times,
+ * on a pool of workers, and aggregates the testing results of all repetitions
+ * with OutputResults.resultStats.
+ *
+ * Competitors are given by class name, optionally followed by ":" and a TrainingCategory
+ * for competitors whose constructor takes one (e.g. "cbboc.examples.SAHHCompetitor:SHORT");
+ * otherwise the no-argument constructor is used.
+ *
+ * With Isolation.CHILD_JVM, each run takes place in a fresh JVM (on the same classpath,
+ * with the -X and -D options of this one), so that one competitor's garbage or JIT state
+ * cannot affect another's timing. Each run also writes its own results file as usual.
+ *
+ * Each repetition uses its own seed for cbboc.util.RNG, derived from that of the tournament,
+ * so repetitions are independent, and the whole tournament is repeatable with -Dcbboc.seed.
+ */
+
+public final class Tournament {
+	
+	public enum Isolation {
+		IN_JVM, CHILD_JVM
+	};
+	
+	private static final String WORKER_OPTION = "-worker";
+	private static final String RESULT_PREFIX = "CBBOC-RESULT ";
+	private static final String SEED_PROPERTY = "cbboc.seed";
+	
+	///////////////////////////////
+	
+	public static final class Standing {
+		
+		final String competitor;
+		final String problemClassName;
+		final int repetitions;
+		final ResultStats testingStats;
+		final double meanTestingWallClockUsage;
+		
+		Standing( String competitor, String problemClassName, List< OutputResults > runs ) {
+			this.competitor = competitor;
+			this.problemClassName = problemClassName;
+			this.repetitions = runs.size();
+			
+			List< OutputResults.Result > testing = new ArrayList< OutputResults.Result >();
+			double wallClock = 0.0;
+			for( OutputResults r : runs ) {
+				testing.addAll( r.testingResults );
+				wallClock += r.testingWallClockUsage;
+			}
+			
+			this.testingStats = OutputResults.resultStats( testing );
+			this.meanTestingWallClockUsage = wallClock / runs.size();
+		}
+		
+		@Override
+		public String toString() {
+			return ToStringBuilder.reflectionToString( this );
+		}
+	}
+	
+	///////////////////////////////
+	
+	private final List< String > competitors;
+	private final List< Path > problemClasses;
+	private final int repetitions;
+	
+	///////////////////////////////
+	
+	public Tournament( List< String > competitors, List< Path > problemClasses, int repetitions ) {
+		if( competitors.isEmpty() || problemClasses.isEmpty() )
+			throw new IllegalArgumentException( "at least one competitor and problem class expected" );
+		if( repetitions < 1 )
+			throw new IllegalArgumentException( "positive number of repetitions expected, found " + repetitions );
+		
+		this.competitors = new ArrayList< String >( competitors );
+		this.problemClasses = new ArrayList< Path >( problemClasses );
+		this.repetitions = repetitions;
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * @return one Standing per (competitor, problem class), in the order given.
+	 */
+	
+	public List< Standing > run( int numWorkers, final Isolation isolation ) throws IOException {
+		
+		final Map< List< Object >, List< Future< OutputResults > > > runs =
+			new LinkedHashMap< List< Object >, List< Future< OutputResults > > >();
+		
+		ExecutorService pool = Executors.newFixedThreadPool( numWorkers, new DaemonThreadFactory( "CBBOC-tournament" ) );
+		try {
+			// Each repetition has its own random streams (derived from the tournament's, so repeatable with -Dcbboc.seed):
+			final long tournamentSeed = RNG.nextRunSeed();
+			// Repetitions outermost, so that a partial tournament is spread over all pairings:
+			for( int rep=0; rep<repetitions; ++rep ) {
+				final long runSeed = RNG.deriveSeed( tournamentSeed, rep );
+				for( final String competitor : competitors ) {
+					for( final Path root : problemClasses ) {
+						List< Object > key = Arrays.< Object >asList( competitor, root );
+						if( !runs.containsKey( key ) )
+							runs.put( key, new ArrayList< Future< OutputResults > >() );
+						
+						runs.get( key ).add( pool.submit( new Callable< OutputResults >() {
+							@Override
+							public OutputResults call() throws Exception {
+								return isolation == Isolation.IN_JVM
+									? CBBOC.run( newCompetitor( competitor ), root, 1, CBBOC.TimeBudget.WALL_CLOCK, false, runSeed )
+									: runChildJvm( competitor, root, runSeed );
+							}
+						} ) );
+					}
+				}
+			}
+			
+			List< Standing > result = new ArrayList< Standing >();
+			for( Map.Entry< List< Object >, List< Future< OutputResults > > > e : runs.entrySet() ) {
+				List< OutputResults > completed = new ArrayList< OutputResults >();
+				for( Future< OutputResults > f : e.getValue() )
+					completed.add( await( f ) );
+				
+				result.add( new Standing( (String)e.getKey().get( 0 ),
+					((Path)e.getKey().get( 1 )).getFileName().toString(), completed ) );
+			}
+			
+			return result;
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	///////////////////////////////
+	
+	private static < T > T await( Future< T > future ) throws IOException {
+		try {
+			return future.get();
+		}
+		catch( InterruptedException ex ) {
+			Thread.currentThread().interrupt();
+			throw new IOException( "interrupted while awaiting tournament results", ex );
+		}
+		catch( ExecutionException ex ) {
+			if( ex.getCause() instanceof IOException )
+				throw (IOException)ex.getCause();
+			if( ex.getCause() instanceof RuntimeException )
+				throw (RuntimeException)ex.getCause();
+			throw new IllegalStateException( ex.getCause() );
+		}
+	}
+	
+	static Competitor newCompetitor( String spec ) throws ReflectiveOperationException {
+		final int colon = spec.indexOf( ':' );
+		if( colon < 0 )
+			return Class.forName( spec ).asSubclass( Competitor.class ).getConstructor().newInstance();
+		
+		TrainingCategory category = TrainingCategory.valueOf( spec.substring( colon + 1 ) );
+		return Class.forName( spec.substring( 0, colon ) ).asSubclass( Competitor.class )
+			.getConstructor( TrainingCategory.class ).newInstance( category );
+	}
+	
+	private static OutputResults runChildJvm( String competitor, Path root, long runSeed ) throws IOException, InterruptedException {
+		
+		List< String > command = new ArrayList< String >();
+		command.add( Paths.get( System.getProperty( "java.home" ), "bin", "java" ).toString() );
+		for( String arg : ManagementFactory.getRuntimeMXBean().getInputArguments() )
+			if( ( arg.startsWith( "-X" ) || arg.startsWith( "-D" ) ) && !arg.startsWith( "-D" + SEED_PROPERTY + "=" ) )
+				command.add( arg );
+		command.add( "-D" + SEED_PROPERTY + "=" + runSeed );
+		
+		command.addAll( Arrays.asList( "-cp", System.getProperty( "java.class.path" ),
+			Tournament.class.getName(), WORKER_OPTION, competitor, root.toString() ) );
+		
+		Process process = new ProcessBuilder( command ).redirectError( ProcessBuilder.Redirect.INHERIT ).start();
+		
+		String json = null;
+		BufferedReader r = new BufferedReader( new InputStreamReader( process.getInputStream() ) );
+		try {
+			for( String line = r.readLine(); line != null; line = r.readLine() )
+				if( line.startsWith( RESULT_PREFIX ) )
+					json = line.substring( RESULT_PREFIX.length() );
+		}
+		finally {
+			r.close();
+		}
+		
+		final int exitCode = process.waitFor();
+		if( exitCode != 0 || json == null )
+			throw new IOException( "child JVM for " + competitor + " on " + root + " failed with exit code " + exitCode );
+		
+		return new Gson().fromJson( json, OutputResults.class );
+	}
+	
+	///////////////////////////////
+	
+	private static void usage() {
+		System.err.println( "usage: Tournament [-workers n] [-isolation IN_JVM|CHILD_JVM] [-repetitions n] "
+			+ "[-classes name,...] [-output file] competitor[:trainingCategory] ..." );
+		System.exit( 1 );
+	}
+	
+	/**
+	 * Problem classes are directory names under resources/ (default: that in resources/classFolder.txt).
+	 */
+	
+	public static void main( String [] args ) throws Exception {
+		
+		if( args.length == 3 && args[ 0 ].equals( WORKER_OPTION ) ) {
+			OutputResults results = CBBOC.run( newCompetitor( args[ 1 ] ), Paths.get( args[ 2 ] ), 1, CBBOC.TimeBudget.WALL_CLOCK, false );
+			System.out.println( RESULT_PREFIX + new Gson().toJson( results ) );
+			return;
+		}
+		
+		final Path resources = Paths.get( System.getProperty( "user.dir" ), "resources" );
+		int numWorkers = 1;
+		Isolation isolation = Isolation.IN_JVM;
+		int repetitions = 1;
+		List< Path > classes = new ArrayList< Path >();
+		String output = null;
+		List< String > competitors = new ArrayList< String >();
+		
+		for( int i=0; i<args.length; ++i ) {
+			if( !args[ i ].startsWith( "-" ) )
+				competitors.add( args[ i ] );
+			else if( i + 1 == args.length )
+				usage();
+			else if( args[ i ].equals( "-workers" ) )
+				numWorkers = Integer.parseInt( args[ ++i ] );
+			else if( args[ i ].equals( "-isolation" ) )
+				isolation = Isolation.valueOf( args[ ++i ] );
+			else if( args[ i ].equals( "-repetitions" ) )
+				repetitions = Integer.parseInt( args[ ++i ] );
+			else if( args[ i ].equals( "-classes" ) )
+				for( String c : args[ ++i ].split( "," ) )
+					classes.add( resources.resolve( c ) );
+			else if( args[ i ].equals( "-output" ) )
+				output = args[ ++i ];
+			else
+				usage();
+		}
+		
+		if( competitors.isEmpty() )
+			usage();
+		
+		if( classes.isEmpty() ) {
+			BufferedReader reader = new BufferedReader( new InputStreamReader(
+				new FileInputStream( resources.resolve( "classFolder.txt" ).toFile() ) ) );
+			try {
+				classes.add( resources.resolve( reader.readLine().trim() ) );
+			}
+			finally {
+				reader.close();
+			}
+		}
+		
+		List< Standing > standings = new Tournament( competitors, classes, repetitions ).run( numWorkers, isolation );
+		for( Standing s : standings )
+			System.out.println( s );
+		
+		if( output != null ) {
+			PrintWriter pw = new PrintWriter( new FileOutputStream( new File( output ) ) );
+			try {
+				pw.println( new Gson().toJson( standings ) );
+			}
+			finally {
+				pw.close();
+			}
+		}
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,205 @@
+package cbboc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * A ProblemInstance rewritten as a sum of Walsh functions:
+ *
+ * f( x ) = constant + sum_t w_t * psi_t( x ),  where psi_t( x ) = (-1)^( sum of x_v over the variables v of term t ).
+ *
+ * Each subfunction's table is transformed by a fast Walsh-Hadamard transform, and terms over
+ * the same set of variables are merged across subfunctions. Flipping variable i negates exactly
+ * the terms containing i, so with the per-variable score S_i = sum_{t containing i} w_t * psi_t( x ),
+ * the change in f from flipping i is -2 * S_i: available in O(1), and maintained in
+ * O(sum of the sizes of the terms containing i) per committed flip.
+ */
+
+final class WalshDecomposition {
+	
+	private final int numGenes;
+	private final double constant;
+	private final double [] coefficients;
+	
+	// CSR: the variables of term t are termVars[ termStart[ t ] ... termStart[ t+1 ]-1 ]
+	private final int [] termStart;
+	private final int [] termVars;
+	
+	// CSR: the terms containing variable i are varTerms[ varTermStart[ i ] ... varTermStart[ i+1 ]-1 ]
+	private final int [] varTermStart;
+	private final int [] varTerms;
+	
+	///////////////////////////////
+	
+	WalshDecomposition( int numGenes, int M, int K, int [] varIndices, double [] tables ) {
+		this.numGenes = numGenes;
+		final int numFks = 1 << K;
+		
+		double constant = 0.0;
+		Map< List< Integer >, Integer > termIndex = new HashMap< List< Integer >, Integer >();
+		List< List< Integer > > terms = new ArrayList< List< Integer > >();
+		List< Double > weights = new ArrayList< Double >();
+		
+		double [] w = new double [ numFks ];
+		boolean [] member = new boolean [ numGenes ];
+		for( int m=0; m<M; ++m ) {
+			System.arraycopy( tables, m * numFks, w, 0, numFks );
+			walshHadamard( w );
+			
+			for( int s=0; s<numFks; ++s ) {
+				final double coefficient = w[ s ] / numFks;
+				if( coefficient == 0.0 )
+					continue;
+				
+				// Table index bit ( K-1-j ) holds the j-th variable of the subfunction;
+				// a variable occurring twice in a subfunction cancels out of the parity:
+				List< Integer > vars = new ArrayList< Integer >();
+				for( int j=0; j<K; ++j ) {
+					if( ( s & ( 1 << ( K - 1 - j ) ) ) != 0 ) {
+						final int v = varIndices[ m * K + j ];
+						member[ v ] = !member[ v ];
+					}
+				}
+				for( int j=0; j<K; ++j ) {
+					final int v = varIndices[ m * K + j ];
+					if( member[ v ] ) {
+						vars.add( v );
+						member[ v ] = false;
+					}
+				}
+				
+				if( vars.isEmpty() ) {
+					constant += coefficient;
+					continue;
+				}
+				
+				Collections.sort( vars );
+				Integer t = termIndex.get( vars );
+				if( t == null ) {
+					termIndex.put( vars, terms.size() );
+					terms.add( vars );
+					weights.add( coefficient );
+				}
+				else {
+					weights.set( t, weights.get( t ) + coefficient );
+				}
+			}
+		}
+		
+		///////////////////////////
+		
+		this.constant = constant;
+		this.coefficients = new double [ terms.size() ];
+		this.termStart = new int [ terms.size() + 1 ];
+		int numTermVars = 0;
+		for( int t=0; t<terms.size(); ++t ) {
+			coefficients[ t ] = weights.get( t );
+			termStart[ t ] = numTermVars;
+			numTermVars += terms.get( t ).size();
+		}
+		termStart[ terms.size() ] = numTermVars;
+		
+		this.termVars = new int [ numTermVars ];
+		this.varTermStart = new int [ numGenes + 1 ];
+		for( int t=0; t<terms.size(); ++t ) {
+			for( int j=0; j<terms.get( t ).size(); ++j ) {
+				final int v = terms.get( t ).get( j );
+				termVars[ termStart[ t ] + j ] = v;
+				++varTermStart[ v + 1 ];
+			}
+		}
+		
+		for( int i=0; i<numGenes; ++i )
+			varTermStart[ i + 1 ] += varTermStart[ i ];
+		
+		this.varTerms = new int [ numTermVars ];
+		int [] next = Arrays.copyOf( varTermStart, numGenes );
+		for( int t=0; t<terms.size(); ++t )
+			for( int a=termStart[ t ]; a<termStart[ t + 1 ]; ++a )
+				varTerms[ next[ termVars[ a ] ]++ ] = t;
+	}
+	
+	/**
+	 * In-place (unnormalised) fast Walsh-Hadamard transform:
+	 * w[ s ] <- sum_x w[ x ] * (-1)^popcount( x & s ).
+	 */
+	
+	private static void walshHadamard( double [] w ) {
+		for( int h=1; h<w.length; h <<= 1 ) {
+			for( int i=0; i<w.length; i += h << 1 ) {
+				for( int j=i; j<i+h; ++j ) {
+					final double a = w[ j ];
+					final double b = w[ j + h ];
+					w[ j ] = a + b;
+					w[ j + h ] = a - b;
+				}
+			}
+		}
+	}
+	
+	///////////////////////////////
+	
+	int getNumGenes() { return numGenes; }
+	int getNumTerms() { return coefficients.length; }
+	
+	long sizeInBytes() {
+		return coefficients.length * 8L + ( termStart.length + termVars.length + varTermStart.length + varTerms.length ) * 4L;
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Sets termOdd[ t ] (length getNumTerms()) to whether psi_t( candidate ) is -1,
+	 * and scores (length getNumGenes()) to the per-variable scores.
+	 * @return the value of candidate.
+	 */
+	
+	double value( boolean [] candidate, boolean [] termOdd, double [] scores ) {
+		Arrays.fill( scores, 0.0 );
+		double total = constant;
+		for( int t=0; t<coefficients.length; ++t ) {
+			boolean odd = false;
+			for( int a=termStart[ t ]; a<termStart[ t + 1 ]; ++a )
+				odd ^= candidate[ termVars[ a ] ];
+			
+			termOdd[ t ] = odd;
+			final double contribution = odd ? -coefficients[ t ] : coefficients[ t ];
+			total += contribution;
+			for( int a=termStart[ t ]; a<termStart[ t + 1 ]; ++a )
+				scores[ termVars[ a ] ] += contribution;
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * @return the change in value from flipping var, given the current scores.
+	 */
+	
+	static double flipDelta( double [] scores, int var ) {
+		return -2.0 * scores[ var ];
+	}
+	
+	/**
+	 * Updates termOdd and scores for flipping var.
+	 */
+	
+	void flip( boolean [] termOdd, double [] scores, int var ) {
+		for( int b=varTermStart[ var ]; b<varTermStart[ var + 1 ]; ++b ) {
+			final int t = varTerms[ b ];
+			final double twiceContribution = 2.0 * ( termOdd[ t ] ? -coefficients[ t ] : coefficients[ t ] );
+			for( int a=termStart[ t ]; a<termStart[ t + 1 ]; ++a )
+				scores[ termVars[ a ] ] -= twiceContribution;
+			
+			termOdd[ t ] = !termOdd[ t ];
+		}
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
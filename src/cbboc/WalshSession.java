@@ -0,0 +1,23 @@
+package cbboc;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * A FlipSession backed by the Walsh decomposition of the instance (gray-box evaluation), 
+ * which knows the value of every Hamming-1 neighbour of the incumbent at all times.
+ * 
+ * Accounting is as for FlipSession, so that no more is revealed than the evaluations 
+ * charged for, with bestFlip() revealing the whole neighbourhood and so charged 
+ * getNumGenes() evaluations. Its result then counts as the variable most recently probed.
+ */
+
+public interface WalshSession extends FlipSession {
+	
+	/** 
+	 * @return the index of the bit whose flip gives the highest value (the lowest such index in case of ties),
+	 * charged as getNumGenes() evaluations. Its value is then available free from valueIfFlipped() or flip(). 
+	 */
+	public int bestFlip();
+}
+
+// End ///////////////////////////////////////////////////////////////
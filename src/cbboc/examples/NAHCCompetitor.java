@@ -1,14 +1,13 @@
 package cbboc.examples;
 
 import java.io.IOException;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import cbboc.CBBOC;
 import cbboc.Competitor;
+import cbboc.FlipSession;
 import cbboc.ObjectiveFn;
-import cbboc.ProblemClass;
 import cbboc.TrainingCategory;
 import cbboc.util.RNG;
 
@@ -16,70 +15,93 @@ import cbboc.util.RNG;
 
 /**
  * Baseline metaheuristic strategy: Next Ascent Hillclimbing.  
- *
+ * 
+ * Sweeps the Hamming-1 neighbours of the incumbent in a fresh random order, 
+ * taking each improving flip as it is found, until a sweep finds no improvement; 
+ * then restarts from a random point, until the budget is exhausted.
+ * Neighbours are probed through a FlipSession, so a sweep allocates nothing.
  */
 
 public final class NAHCCompetitor extends Competitor {
-
+	
 	public NAHCCompetitor() {
 		super( TrainingCategory.NONE );
 	}
-
+	
 	@Override
 	public void train(List<ObjectiveFn> trainingSet, long maxTimeInMilliseconds ) {
 		// no training because we're in TrainingCategory.NONE 
 		throw new UnsupportedOperationException();
 	}
-
+	
 	///////////////////////////////	
 	
 	@Override
 	public void test( ObjectiveFn testCase, long maxTimeInMilliseconds ) {
-
-		boolean [] incumbent = randomBitvector( testCase.getNumGenes() );
-		double bestValue = testCase.value( incumbent ); 
-		boolean improved = false;
-		do {
-			List< boolean [] > neighbors = hamming1Neighbours( incumbent );
-			for( boolean [] neighbor : neighbors ) {
-				final double value = testCase.value( neighbor );
-				if( value > bestValue ) {
+		climb( testCase, RNG.get(), new AtomicBoolean() );
+	}
+	
+	/**
+	 * test() keeps no state outside the call.
+	 */
+	
+	@Override
+	public boolean isThreadSafe() { return true; }
+	
+	///////////////////////////////
+	
+	/**
+	 * Climbs with restarts until the budget is exhausted (signalled by the exception 
+	 * thrown from testCase) or until stop is set, checked after each sweep.
+	 */
+	
+	static void climb( ObjectiveFn testCase, RNG.Generator random, AtomicBoolean stop ) {
+		final boolean [] start = new boolean [ testCase.getNumGenes() ];
+		random.nextBooleans( start );
+		final FlipSession session = testCase.newFlipSession( start );
+		
+		final int [] order = new int [ session.getNumGenes() ];
+		for( int i=0; i<order.length; ++i )
+			order[ i ] = i;
+		
+		while( !stop.get() ) {
+			boolean improved = false;
+			shuffle( order, random );
+			for( int i : order ) {
+				// first improvement: a probe is only kept if it is better
+				if( session.valueIfFlipped( i ) > session.value() ) {
+					session.flip( i );
 					improved = true;
-					incumbent = neighbor;
-					bestValue = value;
 				}
 			}
 			
-		} while( improved && testCase.getRemainingEvaluations() > 0 );
-	}
-
-	///////////////////////////////
-	
-	private static List< boolean [] > hamming1Neighbours( boolean [] incumbent ) {
-		List< boolean [] > result = new ArrayList< boolean [] >();
-		for( int i=0; i<incumbent.length; ++i ) {
-			boolean [] neighbour = incumbent.clone();
-			neighbour[ i ] = !neighbour[ i ];
-			result.add( neighbour );
+			if( !improved ) {
+				// local optimum: restart from a new random point
+				random.nextBooleans( start );
+				session.restart( start );
+			}
 		}
-		
-		return result;
 	}
 	
 	///////////////////////////////
 	
-	private static boolean [] randomBitvector( int length ) {
-		boolean [] result = new boolean [ length ];
-		for( int i=0; i<length; ++i )
-			result[ i ] = RNG.get().nextBoolean();
-		
-		return result;
+	/**
+	 * Fisher-Yates shuffle, in place.
+	 */
+	
+	private static void shuffle( int [] a, RNG.Generator random ) {
+		for( int i=a.length-1; i>0; --i ) {
+			final int j = random.nextInt( i + 1 );
+			final int tmp = a[ i ];
+			a[ i ] = a[ j ];
+			a[ j ] = tmp;
+		}
 	}
 	
 	///////////////////////////////	
-
+	
 	public static void main( String [] args ) throws IOException {
-
+		
 		Competitor competitor = new NAHCCompetitor();
 		CBBOC.run( competitor );
 		
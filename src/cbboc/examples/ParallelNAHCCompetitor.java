@@ -0,0 +1,136 @@
+package cbboc.examples;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cbboc.CBBOC;
+import cbboc.Competitor;
+import cbboc.ObjectiveFn;
+import cbboc.TrainingCategory;
+import cbboc.util.DaemonThreadFactory;
+import cbboc.util.RNG;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Multi-start Next Ascent Hillclimbing on several threads: each worker runs the 
+ * climber of NAHCCompetitor, with restarts, on its own FlipSession and random stream, 
+ * all sharing the evaluation budget of the ObjectiveFn (which charges it atomically).  
+ * The best value and candidate found by any worker are published by the ObjectiveFn itself 
+ * (see ObjectiveFn.getBestCandidate()).
+ * 
+ * The calling thread is one of the workers, so a thread CPU-time budget (CBBOC.TimeBudget.THREAD_CPU_TIME) 
+ * still ends the search, but it charges only the calling thread's share of the work: 
+ * use CBBOC.TimeBudget.PROCESS_CPU_TIME to charge the CPU time of every worker.
+ * When the budget is exhausted, or any worker fails, all workers stop before test() returns, 
+ * and the first exception raised by a worker is rethrown to the harness.
+ */
+
+public final class ParallelNAHCCompetitor extends Competitor {
+	
+	private final int numWorkers;
+	private final ExecutorService pool;
+	
+	///////////////////////////////
+	
+	public ParallelNAHCCompetitor() {
+		this( Runtime.getRuntime().availableProcessors() );
+	}
+	
+	public ParallelNAHCCompetitor( int numWorkers ) {
+		super( TrainingCategory.NONE );
+		if( numWorkers < 1 )
+			throw new IllegalArgumentException( "positive number of workers expected, found " + numWorkers );
+		
+		this.numWorkers = numWorkers;
+		this.pool = numWorkers == 1 ? null 
+			: Executors.newFixedThreadPool( numWorkers - 1, new DaemonThreadFactory( "ParallelNAHC-worker" ) );
+	}
+	
+	@Override
+	public void train(List<ObjectiveFn> trainingSet, long maxTimeInMilliseconds ) {
+		// no training because we're in TrainingCategory.NONE 
+		throw new UnsupportedOperationException();
+	}
+	
+	///////////////////////////////	
+	
+	@Override
+	public void test( final ObjectiveFn testCase, long maxTimeInMilliseconds ) {
+		
+		final AtomicBoolean stop = new AtomicBoolean();
+		final RNG.Generator random = RNG.get();
+		
+		List< Future< ? > > workers = new ArrayList< Future< ? > >();
+		for( int w=1; w<numWorkers; ++w ) {
+			// Streams are split off in order, so are the same from run to run for a given seed:
+			final RNG.Generator workerRandom = random.split();
+			workers.add( pool.submit( new Runnable() {
+				@Override
+				public void run() {
+					try {
+						NAHCCompetitor.climb( testCase, workerRandom, stop );
+					}
+					finally {
+						stop.set( true );
+					}
+				}
+			} ) );
+		}
+		
+		RuntimeException first = null;
+		try {
+			NAHCCompetitor.climb( testCase, random, stop );
+		}
+		catch( RuntimeException ex ) {
+			first = ex;
+		}
+		finally {
+			stop.set( true );
+		}
+		
+		boolean interrupted = false;
+		for( Future< ? > worker : workers ) {
+			while( true ) {
+				try {
+					worker.get();
+					break;
+				}
+				catch( InterruptedException ex ) {
+					// Workers stop within a sweep of stop being set, so keep waiting for them:
+					interrupted = true;
+				}
+				catch( ExecutionException ex ) {
+					if( ex.getCause() instanceof Error )
+						throw (Error)ex.getCause();
+					if( first == null )
+						first = (RuntimeException)ex.getCause();
+					break;
+				}
+			}
+		}
+		
+		if( interrupted )
+			Thread.currentThread().interrupt();
+		if( first != null )
+			throw first;
+	}
+	
+	///////////////////////////////	
+	
+	public static void main( String [] args ) throws IOException {
+		
+		Competitor competitor = new ParallelNAHCCompetitor();
+		CBBOC.run( competitor );
+		
+		System.out.println( "All done." );
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
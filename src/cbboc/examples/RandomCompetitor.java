@@ -12,21 +12,24 @@ import cbboc.util.RNG;
 //////////////////////////////////////////////////////////////////////
 
 public final class RandomCompetitor extends Competitor {
-
+	
 	public RandomCompetitor() {
 		super( TrainingCategory.NONE );
 	}
-
+	
 	@Override
 	public void train(List<ObjectiveFn> trainingSet, long maxTimeInMilliseconds ) {
 		// no training because we're in TrainingCategory.NONE 
 		throw new UnsupportedOperationException();
 	}
-
+	
 	@Override
 	public void test( ObjectiveFn testCase, long maxTimeInMilliseconds ) {
-
+		
 		final long startTime = System.currentTimeMillis();
+		// ObjectiveFn keeps its own copy of the best candidate, so one array can be refilled each time:
+		final boolean [] candidate = new boolean [ testCase.getNumGenes() ];
+		final RNG.Generator random = RNG.get();
 		while( true ) {
 			// final long elapsed = System.currentTimeMillis() - startTime;
 			// if( elapsed > maxTimeInMilliseconds )
@@ -35,26 +38,23 @@ public final class RandomCompetitor extends Competitor {
 			// could check as above, but loop will be terminated automatically 
 			// when time or evaluation budget is exceeded... 
 			
-			final boolean [] candidate = randomBitvector( testCase.getNumGenes() );
+			random.nextBooleans( candidate );
 			final double value = testCase.value( candidate );
 			// Useful strategies will obviously care about value...
 		}
 	}
-
-	///////////////////////////////
 	
-	private static boolean [] randomBitvector( int length ) {
-		boolean [] result = new boolean [ length ];
-		for( int i=0; i<length; ++i )
-			result[ i ] = RNG.get().nextBoolean();
-		
-		return result;
-	}
+	/**
+	 * test() keeps no state outside the call.
+	 */
+	
+	@Override
+	public boolean isThreadSafe() { return true; }
 	
 	///////////////////////////////	
-
+	
 	public static void main( String [] args ) throws IOException {
-
+		
 		Competitor competitor = new RandomCompetitor();
 		CBBOC.run( competitor );
 	}
@@ -1,210 +1,298 @@
 package cbboc.examples;
 
 import java.io.IOException;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
-
-import jeep.lang.Diag;
-import jeep.math.ClosedInterval;
-import jeep.math.LinearInterpolation;
-
-import org.apache.commons.lang3.tuple.Pair;
-import org.apache.commons.math3.stat.StatUtils;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import cbboc.CBBOC;
 import cbboc.Competitor;
+import cbboc.FlipSession;
 import cbboc.ObjectiveFn;
-import cbboc.ProblemClass;
 import cbboc.TrainingCategory;
+import cbboc.search.CoolingSchedule;
+import cbboc.search.SimulatedAnnealing;
+import cbboc.util.DaemonThreadFactory;
 import cbboc.util.RNG;
 
 //////////////////////////////////////////////////////////////////////
 
 /**
  * Baseline learning strategy: Simulated Annealing hyper-heuristic 
- * which learns the start and end values for the annealing schedule.  
+ * which learns the start and end values for the annealing schedule, 
+ * annealed by cbboc.search.SimulatedAnnealing with the given kind of schedule.  
  */
 
 public final class SAHHCompetitor extends Competitor {
-
+	
+	public enum Schedule { LINEAR, GEOMETRIC, ADAPTIVE, REHEATING };
+	
+	private static final double MIN_GEOMETRIC_TEMPERATURE_RATIO = 1e-4;
+	private static final double INITIAL_ACCEPTANCE_RATE = 0.5;
+	private static final int NUM_REHEATING_CYCLES = 4;
+	
+	private final Schedule schedule;
 	private double saScheduleLowerBound = 0.0;
 	private double saScheduleUpperBound = Double.MAX_VALUE;	
 	
 	///////////////////////////////
 	
 	public SAHHCompetitor( TrainingCategory trainingCategory ) {
+		this( trainingCategory, Schedule.LINEAR );
+	}
+	
+	public SAHHCompetitor( TrainingCategory trainingCategory, Schedule schedule ) {
 		super( trainingCategory );
+		this.schedule = schedule;
 		assert( invariant() );
 	}
-
+	
 	///////////////////////////////
 	
-	private static Pair< Double, Double > 
-	WhiteTemperatureRangeForSA( List< Double > fitnessTrajectory ) {
-		if( fitnessTrajectory.isEmpty() )
-			throw new IllegalArgumentException();
+	/**
+	 * Single-pass statistics of a fitness trajectory, as needed for the temperature range:
+	 * the smallest absolute difference between successive values, and the 
+	 * (bias-corrected) variance, accumulated by Welford's method.
+	 * 
+	 * @see:
+	 * @inproceedings{white:1984,
+	 *  address = {Port Chester, NY},
+	 *  author = {White, S. R.},
+	 *  booktitle = {Proceeedings of the IEEE International Conference on Computer Design (ICCD) '84},
+	 *  pages = {646--651},
+	 *  title = {Concepts of Scale in Simulated Annealing},
+	 *  year = {1984}
+	 * }
+	 */
+	
+	private static final class WhiteTemperatureRange {
 		
-		/**
-		 * @see:
-		 * @inproceedings{white:1984,
-		 *  address = {Port Chester, NY},
-		 *  author = {White, S. R.},
-		 *  booktitle = {Proceeedings of the IEEE International Conference on Computer Design (ICCD) '84},
-		 *  pages = {646--651},
-		 *  title = {Concepts of Scale in Simulated Annealing},
-		 *  year = {1984}
-		 * }
-		 */		
-		Double minDifference = null;
-		double [] asArray = new double [ fitnessTrajectory.size() ];
-		asArray[ 0 ] = fitnessTrajectory.get( 0 );
-		for( int i=1; i<fitnessTrajectory.size(); ++i )	{
-			asArray[ i ] = fitnessTrajectory.get( i );
+		private long count = 0;
+		private double mean = 0.0;
+		private double sumSquaredDeviations = 0.0;
+		private double last = Double.NaN;
+		private double minDifference = Double.POSITIVE_INFINITY;
+		
+		///////////////////////////
+		
+		void add( double value ) {
+			if( count > 0 )
+				minDifference = Math.min( minDifference, Math.abs( value - last ) );
+			last = value;
 			
-			final double delta = Math.abs( fitnessTrajectory.get( i ) 
-					- fitnessTrajectory.get(  i - 1 ) );
-			if( minDifference == null || delta < minDifference )
-				minDifference = delta;
+			++count;
+			final double delta = value - mean;
+			mean += delta / count;
+			sumSquaredDeviations += delta * ( value - mean );
+		}
+		
+		/**
+		 * @return whether enough values have been added to bound the temperature.
+		 */
+		
+		boolean hasBounds() {
+			return count >= 2;
+		}
+		
+		double getLowerBound() {
+			if( count < 2 )
+				throw new IllegalStateException( "at least two values expected, found " + count );
+			return minDifference;
+		}
+		
+		double getUpperBound() {
+			if( count < 2 )
+				throw new IllegalStateException( "at least two values expected, found " + count );
+			return Math.sqrt( sumSquaredDeviations / ( count - 1 ) );
 		}
-
-		final double variance = StatUtils.variance( asArray );
-		return Pair.of( minDifference, Math.sqrt( variance ) );		
 	}
 	
 	///////////////////////////////
-
-	private static boolean [] randomHamming1Neighbour( boolean [] incumbent ) {
-		boolean [] neighbour = incumbent.clone();
-		final int randomIndex = RNG.get().nextInt( neighbour.length ); 
-		neighbour[ randomIndex ] = !neighbour[ randomIndex ];
-		return neighbour;
-	}
 	
-	///////////////////////////////
+	/**
+	 * Random walk of numSteps evaluations (including that of its random starting point) 
+	 * by single bit flips, made through a FlipSession so that nothing is allocated per step.
+	 */
 	
-	private static List< Double > 
-	fitnessTrajectoryOfRandomWalk( ObjectiveFn f, long numSteps ) {
+	private static WhiteTemperatureRange temperatureRangeOfRandomWalk( ObjectiveFn f, long numSteps, RNG.Generator random ) {
 		
-		boolean [] incumbent = randomBitvector( f.getNumGenes() );
+		final boolean [] start = new boolean [ f.getNumGenes() ];
+		random.nextBooleans( start );
+		
+		WhiteTemperatureRange result = new WhiteTemperatureRange();
+		if( numSteps <= 0 )
+			return result;
+		
+		final FlipSession session = f.newFlipSession( start );
+		result.add( session.value() );
+		for( long i=1; i<numSteps; ++i )
+			result.add( session.flip( random.nextInt( start.length ) ) );
 		
-		List< Double > result = new ArrayList< Double >();
-		for( int i=0; i<numSteps; ++i ) {
-			boolean [] incoming = randomHamming1Neighbour( incumbent );
-			result.add( f.value( incoming ) );
-
-			incumbent = incoming;
-		}
 		return result;
 	}
 	
 	///////////////////////////////	
 	
+	/**
+	 * The training instances are walked concurrently, each on its own random stream 
+	 * (split off in order, so that seeded results do not depend on scheduling) and with 
+	 * an equal share of the training evaluations, which all walks charge atomically. 
+	 * As in ParallelNAHCCompetitor, the calling thread walks its own share of the instances
+	 * (every numThreads-th one) alongside the pool, rather than idling until the pool is done.
+	 * Note that CBBOC.TimeBudget.THREAD_CPU_TIME charges only the calling thread's walks, 
+	 * and CBBOC.TimeBudget.PROCESS_CPU_TIME those of every thread.
+	 * If the time or evaluations run out, the bounds are learned from the walks that completed.
+	 * Walks of fewer than two steps (when there are fewer than two evaluations per instance) 
+	 * cannot bound the temperature and are ignored, leaving the default bounds if none can.
+	 */
+	
 	@Override
-	public void train(List<ObjectiveFn> trainingSet, long maxTimeInMilliseconds ) {
+	public void train( final List< ObjectiveFn > trainingSet, long maxTimeInMilliseconds ) {
 		
 		final long evalPerCase = trainingSet.get( 0 ).getRemainingEvaluations() / trainingSet.size();
-		
 		// ^ `remaining evaluations' for training are shared across all instances.
-//		int totalEvaluations = 0;
-//		for( int i=0; i<trainingSet.size(); ++i )
-//			totalEvaluations += trainingSet.get( i ).getRemainingEvaluations();
-
-		double [] saScheduleLowerBounds = new double [ trainingSet.size()];		
-		double [] saScheduleUpperBounds = new double [ trainingSet.size()];
-		for( int i=0; i<trainingSet.size(); ++i ) {
-			Pair< Double, Double > saScheduleBounds = WhiteTemperatureRangeForSA( fitnessTrajectoryOfRandomWalk( trainingSet.get( i ), evalPerCase ) );
-			saScheduleLowerBounds[ i ] = saScheduleBounds.getLeft();			
-			saScheduleUpperBounds[ i ] = saScheduleBounds.getRight();			
+		
+		final int numThreads = Math.min( trainingSet.size(), Runtime.getRuntime().availableProcessors() );
+		ExecutorService pool = numThreads == 1 ? null 
+			: Executors.newFixedThreadPool( numThreads - 1, new DaemonThreadFactory( "SAHH-trainer" ) );
+		List< RNG.Generator > randoms = new ArrayList< RNG.Generator >();
+		List< Future< WhiteTemperatureRange > > walks = new ArrayList< Future< WhiteTemperatureRange > >();
+		try {
+			for( int i=0; i<trainingSet.size(); ++i ) {
+				final ObjectiveFn fn = trainingSet.get( i );
+				final RNG.Generator random = RNG.get().split();
+				randoms.add( random );
+				if( i % numThreads == 0 ) {
+					walks.add( null ); // walked below by the calling thread
+					continue;
+				}
+				walks.add( pool.submit( new Callable< WhiteTemperatureRange >() {
+					@Override
+					public WhiteTemperatureRange call() {
+						return temperatureRangeOfRandomWalk( fn, evalPerCase, random );
+					}
+				} ) );
+			}
+		}
+		finally {
+			if( pool != null )
+				pool.shutdown();
 		}
 		
-		saScheduleLowerBound = StatUtils.mean( saScheduleLowerBounds );
-		saScheduleUpperBound = StatUtils.mean( saScheduleUpperBounds );		
+		RuntimeException failure = null;
+		double lowerBoundSum = 0.0, upperBoundSum = 0.0;
+		int numCompleted = 0;
+		for( int i=0; i<trainingSet.size(); i += numThreads ) {
+			try {
+				WhiteTemperatureRange range = temperatureRangeOfRandomWalk( trainingSet.get( i ), evalPerCase, randoms.get( i ) );
+				if( range.hasBounds() ) {
+					lowerBoundSum += range.getLowerBound();
+					upperBoundSum += range.getUpperBound();
+					++numCompleted;
+				}
+			}
+			catch( RuntimeException ex ) {
+				if( failure == null )
+					failure = ex;
+			}
+		}
+		
+		for( Future< WhiteTemperatureRange > walk : walks ) {
+			if( walk == null )
+				continue;
+			try {
+				WhiteTemperatureRange range = walk.get();
+				if( range.hasBounds() ) {
+					lowerBoundSum += range.getLowerBound();
+					upperBoundSum += range.getUpperBound();
+					++numCompleted;
+				}
+			}
+			catch( InterruptedException ex ) {
+				Thread.currentThread().interrupt();
+				pool.shutdownNow();
+				throw new IllegalStateException( "interrupted while training", ex );
+			}
+			catch( ExecutionException ex ) {
+				if( ex.getCause() instanceof Error )
+					throw (Error)ex.getCause();
+				if( failure == null )
+					failure = (RuntimeException)ex.getCause();
+			}
+		}
+		
+		if( numCompleted > 0 ) {
+			saScheduleLowerBound = lowerBoundSum / numCompleted;
+			saScheduleUpperBound = upperBoundSum / numCompleted;
+		}
 		assert( invariant() );		
+		
+		if( failure != null )
+			throw failure;
 	}
-
-	///////////////////////////////
 	
-	static double minDiffDivT = Double.POSITIVE_INFINITY;
-	static double maxDiffDivT = 0.0;	
+	///////////////////////////////	
 	
-	private static boolean SAAccept( double lastValue, double currentValue, double temperature ) {
-		if( Double.isNaN( temperature ) || temperature < 0 )
-			throw new IllegalArgumentException( "Expected non-negative temperature, found:" + temperature );
-
-		// assumes maximising...
-		if( currentValue > lastValue )
-			return true;			
-		else if( temperature == 0 )
-			return currentValue >= lastValue;
-		else {
-			assert currentValue <= lastValue;
-			assert temperature > 0;
-			
-			final double diffDivT = ( currentValue - lastValue ) / temperature;
-			// assert( diffDivT >= 0 );
-			
-			if( diffDivT < minDiffDivT )
-				minDiffDivT = diffDivT; 
-			if( diffDivT > maxDiffDivT )
-				maxDiffDivT = diffDivT; 
-			
-			final double p = Math.exp( diffDivT );
-			assert !Double.isNaN( p );
-			return RNG.get().nextDouble() < p;
+	private CoolingSchedule newCoolingSchedule() {
+		switch( schedule ) {
+			case LINEAR : 
+				return CoolingSchedule.linear( saScheduleUpperBound, saScheduleLowerBound );
+			case GEOMETRIC : 
+				return CoolingSchedule.geometric( saScheduleUpperBound, geometricLowerBound() );
+			case ADAPTIVE : 
+				return CoolingSchedule.adaptive( saScheduleUpperBound, saScheduleLowerBound, INITIAL_ACCEPTANCE_RATE );
+			case REHEATING : 
+				return CoolingSchedule.reheating( CoolingSchedule.geometric( saScheduleUpperBound, geometricLowerBound() ), NUM_REHEATING_CYCLES );
+			default :
+				throw new IllegalStateException();
 		}
-	}	
+	}
 	
-	///////////////////////////////	
+	/**
+	 * The learned lower bound (the smallest change in value along a random walk) 
+	 * is often zero, which geometric cooling cannot reach.
+	 */
+	
+	private double geometricLowerBound() {
+		return Math.max( saScheduleLowerBound, saScheduleUpperBound * MIN_GEOMETRIC_TEMPERATURE_RATIO );
+	}
 	
 	@Override
 	public void test( ObjectiveFn testCase, long maxTimeInMilliseconds ) {
-
-		boolean [] incumbent = randomBitvector( testCase.getNumGenes() );
-		double lastValue = testCase.value( incumbent ); 
 		
-		final long numEvaluations = testCase.getRemainingEvaluations();
-		for( int i=0; i<numEvaluations; ++i ){
-			
-			final boolean [] incoming = randomHamming1Neighbour( incumbent );
-			final double value = testCase.value( incoming );
-			
-			// linear annealing schedule...
-			final double temperature = LinearInterpolation.apply( 
-					i, 0, numEvaluations - 1, 
-					saScheduleUpperBound, saScheduleLowerBound ); 
-			if( SAAccept( lastValue, value, temperature ) ) {
-				incumbent = incoming;
-				lastValue = value;
-			}
-		}
-	}
-
-	///////////////////////////////
-
-	private static boolean [] randomBitvector( int length ) {
-		boolean [] result = new boolean [ length ];
-		for( int i=0; i<length; ++i )
-			result[ i ] = RNG.get().nextBoolean();
+		final RNG.Generator random = RNG.get();
+		final boolean [] start = new boolean [ testCase.getNumGenes() ];
+		random.nextBooleans( start );
+		final FlipSession session = testCase.newFlipSession( start );
 		
-		return result;
+		// Each move is charged one evaluation, after that of the starting point:
+		new SimulatedAnnealing( newCoolingSchedule() ).run( session, testCase.getRemainingEvaluations(), random );
 	}
 	
+	/**
+	 * The schedule bounds are only written by train(), which the harness completes before 
+	 * testing starts, and each call to test() anneals with a cooling schedule of its own.
+	 */
+	
+	@Override
+	public boolean isThreadSafe() { return true; }
+	
+	///////////////////////////////
+	
 	public boolean invariant() {
 		return saScheduleLowerBound < saScheduleUpperBound; 
 	}
 	
 	///////////////////////////////	
-
+	
 	public static void main( String [] args ) throws IOException {
 		
 		Competitor competitor = new SAHHCompetitor( TrainingCategory.SHORT );
 		CBBOC.run( competitor );
-
-		Diag.println( "minDiffDivT: " + minDiffDivT + "exp:" + Math.exp( minDiffDivT ) );
-		Diag.println( "maxDiffDivT:" + maxDiffDivT + "exp:" + Math.exp( maxDiffDivT ) );	
-
 		
 		System.out.println( "All done." );
 	}
@@ -0,0 +1,245 @@
+package cbboc.examples;
+
+import java.io.IOException;
+import java.util.List;
+
+import cbboc.CBBOC;
+import cbboc.Competitor;
+import cbboc.ObjectiveFn;
+import cbboc.TrainingCategory;
+import cbboc.util.PackedBits;
+import cbboc.util.RNG;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Baseline population-based strategy: a steady-state genetic algorithm.
+ * Each generation breeds one offspring from two parents chosen by tournament selection,
+ * via crossover (with probability crossoverRate) and bit-flip mutation, and the offspring
+ * replaces the worst member of the population if it is no worse.
+ *
+ * The population lives in a single packed-bit arena (member k occupies words
+ * [ k * numWords, (k+1) * numWords ), see PackedBits) with its values in a double [],
+ * so there are no per-individual objects and nothing is allocated per generation.
+ *
+ * With TrainingCategory.SHORT or LONG, the crossover rate and mutation rate are chosen
+ * from a small grid by running the GA with each setting on the same training instances,
+ * each run with the evaluation budget of a testing instance.
+ */
+
+public final class SteadyStateGACompetitor extends Competitor {
+	
+	public enum Crossover { UNIFORM, TWO_POINT };
+	
+	private static final int POPULATION_SIZE = 64;
+	private static final int TOURNAMENT_SIZE = 2;
+	
+	private static final double [] CROSSOVER_RATES = { 0.5, 0.9 };
+	// Expected number of bits flipped per offspring:
+	private static final double [] MUTATIONS_PER_OFFSPRING = { 0.5, 1.0, 2.0 };
+	
+	private final Crossover crossover;
+	private double crossoverRate = 0.9;
+	private double mutationsPerOffspring = 1.0;
+	
+	///////////////////////////////
+	
+	public SteadyStateGACompetitor( TrainingCategory trainingCategory ) {
+		this( trainingCategory, Crossover.UNIFORM );
+	}
+	
+	public SteadyStateGACompetitor( TrainingCategory trainingCategory, Crossover crossover ) {
+		super( trainingCategory );
+		this.crossover = crossover;
+	}
+	
+	///////////////////////////////
+	
+	public double getCrossoverRate() { return crossoverRate; }
+	public double getMutationsPerOffspring() { return mutationsPerOffspring; }
+	
+	///////////////////////////////
+	
+	@Override
+	public void train( List< ObjectiveFn > trainingSet, long maxTimeInMilliseconds ) {
+		
+		// `remaining evaluations' for training are shared across all instances:
+		final long totalEvaluations = trainingSet.get( 0 ).getRemainingEvaluations();
+		final int numSettings = CROSSOVER_RATES.length * MUTATIONS_PER_OFFSPRING.length;
+		
+		// In each round, every setting is run once on the same instance:
+		long evaluationsPerRun = trainingSet.get( 0 ).getMaxEvalsPerInstance();
+		long numRounds = totalEvaluations / ( numSettings * evaluationsPerRun );
+		if( numRounds == 0 ) {
+			evaluationsPerRun = totalEvaluations / numSettings;
+			numRounds = 1;
+		}
+		
+		final RNG.Generator random = RNG.get();
+		final double [] totalBest = new double [ numSettings ];
+		final double [] roundBest = new double [ numSettings ];
+		long numCompletedRounds = 0;
+		try {
+			for( long round=0; round<numRounds; ++round ) {
+				final ObjectiveFn fn = trainingSet.get( (int)( round % trainingSet.size() ) );
+				for( int s=0; s<numSettings; ++s ) {
+					roundBest[ s ] = evolve( fn, evaluationsPerRun,
+						CROSSOVER_RATES[ s / MUTATIONS_PER_OFFSPRING.length ],
+						MUTATIONS_PER_OFFSPRING[ s % MUTATIONS_PER_OFFSPRING.length ], random );
+				}
+				++numCompletedRounds;
+				for( int s=0; s<numSettings; ++s )
+					totalBest[ s ] += roundBest[ s ];
+			}
+		}
+		finally {
+			// If the time budget ran out, the incomplete round is ignored:
+			if( numCompletedRounds > 0 ) {
+				int best = 0;
+				for( int s=1; s<numSettings; ++s )
+					if( totalBest[ s ] > totalBest[ best ] )
+						best = s;
+				
+				crossoverRate = CROSSOVER_RATES[ best / MUTATIONS_PER_OFFSPRING.length ];
+				mutationsPerOffspring = MUTATIONS_PER_OFFSPRING[ best % MUTATIONS_PER_OFFSPRING.length ];
+			}
+		}
+	}
+	
+	@Override
+	public void test( ObjectiveFn testCase, long maxTimeInMilliseconds ) {
+		// Terminated by the harness when the time or evaluation budget is exhausted:
+		evolve( testCase, Long.MAX_VALUE, crossoverRate, mutationsPerOffspring, RNG.get() );
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Runs the GA on fn for maxEvaluations evaluations.
+	 * @return the best value found.
+	 */
+	
+	private double evolve( ObjectiveFn fn, long maxEvaluations, double crossoverRate,
+			double mutationsPerOffspring, RNG.Generator random ) {
+		
+		final int numGenes = fn.getNumGenes();
+		final int numWords = PackedBits.numWords( numGenes );
+		final long [] arena = new long [ POPULATION_SIZE * numWords ];
+		final double [] values = new double [ POPULATION_SIZE ];
+		final long [] child = new long [ numWords ];
+		final double mutationRate = Math.min( 0.5, mutationsPerOffspring / numGenes );
+		
+		double best = Double.NEGATIVE_INFINITY;
+		long numEvaluations = 0;
+		for( int k=0; k<POPULATION_SIZE && numEvaluations < maxEvaluations; ++k, ++numEvaluations ) {
+			random.nextBits( child, numGenes );
+			values[ k ] = fn.value( child );
+			best = Math.max( best, values[ k ] );
+			System.arraycopy( child, 0, arena, k * numWords, numWords );
+		}
+		
+		for( ; numEvaluations < maxEvaluations; ++numEvaluations ) {
+			final int a = tournament( values, random );
+			if( random.nextDouble() < crossoverRate ) {
+				final int b = tournament( values, random );
+				if( crossover == Crossover.UNIFORM )
+					uniformCrossover( arena, a * numWords, b * numWords, child, random );
+				else
+					twoPointCrossover( arena, a * numWords, b * numWords, child, numGenes, random );
+			}
+			else {
+				System.arraycopy( arena, a * numWords, child, 0, numWords );
+			}
+			mutate( child, numGenes, mutationRate, random );
+			
+			final double value = fn.value( child );
+			best = Math.max( best, value );
+			
+			int worst = 0;
+			for( int k=1; k<POPULATION_SIZE; ++k )
+				if( values[ k ] < values[ worst ] )
+					worst = k;
+			
+			if( value >= values[ worst ] ) {
+				System.arraycopy( child, 0, arena, worst * numWords, numWords );
+				values[ worst ] = value;
+			}
+		}
+		
+		return best;
+	}
+	
+	///////////////////////////////
+	
+	private static int tournament( double [] values, RNG.Generator random ) {
+		int result = random.nextInt( values.length );
+		for( int t=1; t<TOURNAMENT_SIZE; ++t ) {
+			final int k = random.nextInt( values.length );
+			if( values[ k ] > values[ result ] )
+				result = k;
+		}
+		return result;
+	}
+	
+	private static void uniformCrossover( long [] arena, int a, int b, long [] child, RNG.Generator random ) {
+		for( int w=0; w<child.length; ++w ) {
+			final long mask = random.nextLong();
+			child[ w ] = ( arena[ a + w ] & mask ) | ( arena[ b + w ] & ~mask );
+		}
+	}
+	
+	/**
+	 * Takes bits [ from, to ) from parent b and the rest from parent a.
+	 */
+	
+	private static void twoPointCrossover( long [] arena, int a, int b, long [] child, int numGenes, RNG.Generator random ) {
+		int from = random.nextInt( numGenes + 1 );
+		int to = random.nextInt( numGenes + 1 );
+		if( from > to ) {
+			final int tmp = from;
+			from = to;
+			to = tmp;
+		}
+		
+		for( int w=0; w<child.length; ++w ) {
+			final int lo = Math.max( from - ( w << 6 ), 0 );
+			final int hi = Math.min( to - ( w << 6 ), 64 );
+			final long mask = lo >= hi ? 0L : ( hi == 64 ? -1L : ( 1L << hi ) - 1 ) & ( -1L << lo );
+			child[ w ] = ( arena[ a + w ] & ~mask ) | ( arena[ b + w ] & mask );
+		}
+	}
+	
+	/**
+	 * Flips each bit independently with probability rate, visiting only the bits flipped
+	 * (the gaps between them are geometrically distributed). At least one bit is flipped,
+	 * so that an offspring copied from a single parent is never a duplicate of it.
+	 */
+	
+	private static void mutate( long [] child, int numGenes, double rate, RNG.Generator random ) {
+		final double logOneMinusRate = Math.log1p( -rate );
+		boolean flipped = false;
+		for( long i = geometric( logOneMinusRate, random ); i<numGenes; i += 1 + geometric( logOneMinusRate, random ) ) {
+			PackedBits.flip( child, (int)i );
+			flipped = true;
+		}
+		
+		if( !flipped )
+			PackedBits.flip( child, random.nextInt( numGenes ) );
+	}
+	
+	private static long geometric( double logOneMinusRate, RNG.Generator random ) {
+		return (long)( Math.log( 1.0 - random.nextDouble() ) / logOneMinusRate );
+	}
+	
+	///////////////////////////////
+	
+	public static void main( String [] args ) throws IOException {
+		
+		Competitor competitor = new SteadyStateGACompetitor( TrainingCategory.SHORT );
+		CBBOC.run( competitor );
+		
+		System.out.println( "All done." );
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
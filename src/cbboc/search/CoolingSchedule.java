@@ -0,0 +1,179 @@
+package cbboc.search;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Temperature schedule for SimulatedAnnealing, updated incrementally after each move 
+ * (rather than recomputed from the step number), so that a step costs a multiplication 
+ * or addition. Schedules are stateful: start() begins a run, and an instance must not 
+ * be shared by concurrent runs.
+ */
+
+public abstract class CoolingSchedule {
+	
+	/** Begins a run of numSteps moves, @return the temperature for the first move */
+	public abstract double start( long numSteps );
+	
+	/** Called after each move, @return the temperature for the next move */
+	public abstract double next( boolean accepted );
+	
+	///////////////////////////////
+	
+	private static void checkBounds( double upper, double lower ) {
+		if( !( 0.0 <= lower && lower <= upper ) || Double.isInfinite( upper ) )
+			throw new IllegalArgumentException( "Expected 0 <= lower <= upper < infinity, found lower:" + lower + ", upper:" + upper );
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Falls by a constant amount per step, from upper at the first move to lower at the last.
+	 */
+	
+	public static CoolingSchedule linear( final double upper, final double lower ) {
+		checkBounds( upper, lower );
+		return new CoolingSchedule() {
+			
+			private double temperature;
+			private double decrement;
+			
+			@Override
+			public double start( long numSteps ) {
+				decrement = numSteps > 1 ? ( upper - lower ) / ( numSteps - 1 ) : 0.0;
+				return temperature = upper;
+			}
+			
+			@Override
+			public double next( boolean accepted ) {
+				return temperature = Math.max( lower, temperature - decrement );
+			}
+		};
+	}
+	
+	/**
+	 * Falls by a constant factor per step, from upper at the first move to lower (which must be positive) at the last.
+	 */
+	
+	public static CoolingSchedule geometric( final double upper, final double lower ) {
+		checkBounds( upper, lower );
+		if( lower == 0.0 )
+			throw new IllegalArgumentException( "Expected positive lower bound for geometric cooling" );
+		
+		return new CoolingSchedule() {
+			
+			private double temperature;
+			private double factor;
+			
+			@Override
+			public double start( long numSteps ) {
+				factor = numSteps > 1 ? Math.pow( lower / upper, 1.0 / ( numSteps - 1 ) ) : 1.0;
+				return temperature = upper;
+			}
+			
+			@Override
+			public double next( boolean accepted ) {
+				return temperature = Math.max( lower, temperature * factor );
+			}
+		};
+	}
+	
+	/**
+	 * Steers the temperature (within [ lower, upper ]) so that the fraction of moves accepted 
+	 * tracks a target which falls linearly from initialAcceptanceRate to zero over the run: 
+	 * after each window of moves, the temperature is lowered if more moves were accepted 
+	 * than targeted, and raised otherwise.
+	 */
+	
+	public static CoolingSchedule adaptive( final double upper, final double lower, final double initialAcceptanceRate ) {
+		checkBounds( upper, lower );
+		if( !( initialAcceptanceRate > 0.0 && initialAcceptanceRate <= 1.0 ) )
+			throw new IllegalArgumentException( "Expected acceptance rate in (0,1], found:" + initialAcceptanceRate );
+		
+		final int window = 100;
+		final double adjustment = 0.9;
+		return new CoolingSchedule() {
+			
+			private double temperature;
+			private double targetRate;
+			private double targetRateDecrement;
+			private int step;
+			private int numAccepted;
+			
+			@Override
+			public double start( long numSteps ) {
+				targetRate = initialAcceptanceRate;
+				targetRateDecrement = initialAcceptanceRate * window / Math.max( numSteps, window );
+				step = 0;
+				numAccepted = 0;
+				return temperature = upper;
+			}
+			
+			@Override
+			public double next( boolean accepted ) {
+				if( accepted )
+					++numAccepted;
+				
+				if( ++step == window ) {
+					if( numAccepted > targetRate * window )
+						temperature = Math.max( lower, temperature * adjustment );
+					else
+						temperature = Math.min( upper, temperature / adjustment );
+					
+					targetRate = Math.max( 0.0, targetRate - targetRateDecrement );
+					step = 0;
+					numAccepted = 0;
+				}
+				return temperature;
+			}
+		};
+	}
+	
+	/**
+	 * Runs schedule numCycles times in succession over the run, so that the 
+	 * temperature is reset to the start of schedule at the beginning of each cycle.
+	 * Cycle k ends at step ( k + 1 ) * numSteps / numCycles, so that any remainder is spread 
+	 * over the cycles and the last one ends with the run (there are fewer cycles if there 
+	 * are fewer steps than cycles).
+	 */
+	
+	public static CoolingSchedule reheating( final CoolingSchedule schedule, final int numCycles ) {
+		if( numCycles < 1 )
+			throw new IllegalArgumentException( "Expected positive number of cycles, found:" + numCycles );
+		
+		return new CoolingSchedule() {
+			
+			private long numSteps;
+			private int numRunCycles;
+			private int cycle;
+			private long cycleLength;
+			private long step;
+			
+			private long cycleEnd( int k ) {
+				return ( k + 1 ) * numSteps / numRunCycles;
+			}
+			
+			@Override
+			public double start( long numSteps ) {
+				this.numSteps = Math.max( 1, numSteps );
+				numRunCycles = (int)Math.min( numCycles, this.numSteps );
+				cycle = 0;
+				cycleLength = cycleEnd( 0 );
+				step = 0;
+				return schedule.start( cycleLength );
+			}
+			
+			@Override
+			public double next( boolean accepted ) {
+				if( ++step == cycleLength && cycle + 1 < numRunCycles ) {
+					++cycle;
+					cycleLength = cycleEnd( cycle ) - cycleEnd( cycle - 1 );
+					step = 0;
+					return schedule.start( cycleLength );
+				}
+				return schedule.next( accepted );
+			}
+		};
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
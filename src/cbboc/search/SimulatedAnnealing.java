@@ -0,0 +1,84 @@
+package cbboc.search;
+
+import cbboc.FlipSession;
+import cbboc.util.RNG;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Simulated annealing over single bit flips, by delta evaluation through a FlipSession: 
+ * each move probes one random neighbour of the incumbent (one evaluation) and accepts it 
+ * by the Metropolis criterion (for maximisation) at the temperature given by a CoolingSchedule.
+ * 
+ * Acceptance probabilities exp( delta / T ) are read from a table with linear interpolation 
+ * (relative error below 1e-5), and moves with delta / T below MIN_EXPONENT 
+ * (probability under 1e-9) are rejected without drawing a random number.
+ */
+
+public final class SimulatedAnnealing {
+	
+	private static final double MIN_EXPONENT = -21.0;
+	private static final int TABLE_SIZE = 4096;
+	private static final double [] EXP_TABLE = new double [ TABLE_SIZE + 1 ];
+	static {
+		for( int i=0; i<=TABLE_SIZE; ++i )
+			EXP_TABLE[ i ] = Math.exp( MIN_EXPONENT * i / TABLE_SIZE );
+	}
+	
+	///////////////////////////////
+	
+	private final CoolingSchedule schedule;
+	
+	///////////////////////////////
+	
+	public SimulatedAnnealing( CoolingSchedule schedule ) {
+		this.schedule = schedule;
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * @return exp( x ), for MIN_EXPONENT <= x <= 0.
+	 */
+	
+	static double exp( double x ) {
+		final double position = x * ( TABLE_SIZE / MIN_EXPONENT );
+		final int i = (int)position;
+		if( i >= TABLE_SIZE )
+			return EXP_TABLE[ TABLE_SIZE ];
+		
+		final double fraction = position - i;
+		return EXP_TABLE[ i ] + fraction * ( EXP_TABLE[ i + 1 ] - EXP_TABLE[ i ] );
+	}
+	
+	private static boolean accept( double delta, double temperature, RNG.Generator random ) {
+		if( delta >= 0.0 )
+			return true;
+		if( !( temperature > 0.0 ) )
+			return false;
+		
+		final double exponent = delta / temperature;
+		return exponent >= MIN_EXPONENT && random.nextDouble() < exp( exponent );
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Makes numSteps moves from the incumbent of session, each charged one evaluation.
+	 */
+	
+	public void run( FlipSession session, long numSteps, RNG.Generator random ) {
+		final int numGenes = session.getNumGenes();
+		double temperature = schedule.start( numSteps );
+		for( long step=0; step<numSteps; ++step ) {
+			final int i = random.nextInt( numGenes );
+			final boolean accepted = accept( session.valueIfFlipped( i ) - session.value(), temperature, random );
+			if( accepted )
+				session.flip( i );
+			
+			temperature = schedule.next( accepted );
+		}
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,103 @@
+package cbboc.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import cbboc.search.CoolingSchedule;
+
+//////////////////////////////////////////////////////////////////////
+
+public class TestCoolingSchedule {
+	
+	private static final double TOLERANCE = 1e-9;
+	
+	/**
+	 * @return the temperature at the last of numSteps moves (all accepted).
+	 */
+	
+	private static double last( CoolingSchedule schedule, long numSteps ) {
+		double temperature = schedule.start( numSteps );
+		for( long i=1; i<numSteps; ++i )
+			temperature = schedule.next( true );
+		
+		return temperature;
+	}
+	
+	///////////////////////////////
+	
+	@Test
+	public void testEndpoints() {
+		assertEquals( 10.0, CoolingSchedule.linear( 10.0, 0.0 ).start( 1000 ), 0.0 );
+		assertEquals( 0.0, last( CoolingSchedule.linear( 10.0, 0.0 ), 1000 ), TOLERANCE );
+		assertEquals( 0.1, last( CoolingSchedule.geometric( 10.0, 0.1 ), 1000 ), TOLERANCE );
+		
+		// restarting gives the same schedule again:
+		CoolingSchedule linear = CoolingSchedule.linear( 10.0, 1.0 );
+		last( linear, 50 );
+		assertEquals( 1.0, last( linear, 1000 ), TOLERANCE );
+	}
+	
+	@Test
+	public void testReheating() {
+		CoolingSchedule reheating = CoolingSchedule.reheating( CoolingSchedule.linear( 10.0, 1.0 ), 4 );
+		assertEquals( 10.0, reheating.start( 400 ), 0.0 );
+		double temperature = 10.0;
+		for( int i=1; i<400; ++i ) {
+			final double next = reheating.next( true );
+			if( i % 100 == 0 )
+				assertEquals( 10.0, next, 0.0 );
+			else
+				assertTrue( next < temperature );
+			
+			temperature = next;
+		}
+		assertEquals( 1.0, temperature, TOLERANCE );
+	}
+	
+	/**
+	 * The remainder of the steps is spread over the cycles (of 100, 100, 100 and 101 steps here), 
+	 * rather than starting a fifth, truncated one.
+	 */
+	
+	@Test
+	public void testReheatingSpreadsRemainder() {
+		CoolingSchedule reheating = CoolingSchedule.reheating( CoolingSchedule.linear( 10.0, 1.0 ), 4 );
+		double temperature = reheating.start( 401 );
+		int numResets = 0;
+		for( int i=1; i<401; ++i ) {
+			final double next = reheating.next( true );
+			if( next > temperature )
+				++numResets;
+			
+			temperature = next;
+		}
+		assertEquals( 3, numResets );
+		assertEquals( 1.0, temperature, TOLERANCE );
+		
+		// fewer steps than cycles, so one step per cycle:
+		assertEquals( 10.0, reheating.start( 2 ), 0.0 );
+		assertEquals( 10.0, reheating.next( true ), 0.0 );
+	}
+	
+	@Test
+	public void testAdaptiveStaysInBoundsAndResponds() {
+		CoolingSchedule adaptive = CoolingSchedule.adaptive( 10.0, 1.0, 0.5 );
+		double temperature = adaptive.start( 10000 );
+		for( int i=0; i<3000; ++i )
+			temperature = adaptive.next( true );
+		// always accepting exceeds the target, so the schedule cools to its lower bound:
+		assertEquals( 1.0, temperature, 0.0 );
+		
+		for( int i=0; i<3000; ++i )
+			temperature = adaptive.next( false );
+		assertEquals( 10.0, temperature, 0.0 );
+	}
+	
+	@Test( expected = IllegalArgumentException.class )
+	public void testGeometricNeedsPositiveLowerBound() {
+		CoolingSchedule.geometric( 10.0, 0.0 );
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,106 @@
+package cbboc.test;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import cbboc.Deadline;
+
+//////////////////////////////////////////////////////////////////////
+
+public class TestDeadline {
+	
+	private static final long TIMEOUT_IN_MILLISECONDS = 10000;
+	
+	// Written by the busy worker below, so that its loop cannot be optimised away:
+	private static volatile long sink;
+	
+	/**
+	 * Waits (without using CPU time) until deadline has expired or the timeout has passed.
+	 * @return whether deadline expired.
+	 */
+	
+	private static boolean awaitExpiry( Deadline deadline ) throws InterruptedException {
+		final long end = System.currentTimeMillis() + TIMEOUT_IN_MILLISECONDS;
+		while( !deadline.hasExpired() && System.currentTimeMillis() < end )
+			Thread.sleep( 5 );
+		
+		return deadline.hasExpired();
+	}
+	
+	///////////////////////////////
+	
+	@Test
+	public void testWallClockDeadlineFires() throws InterruptedException {
+		final long start = System.nanoTime();
+		final Deadline deadline = Deadline.startWallClock( 100 );
+		assertTrue( "wall-clock deadline did not expire", awaitExpiry( deadline ) );
+		// never early:
+		assertTrue( System.nanoTime() - start >= 100 * 1000000L );
+		assertFalse( deadline.isTimerPending() );
+	}
+	
+	/**
+	 * A deadline expired early no longer has a task in the timer.
+	 */
+	
+	@Test
+	public void testExpireCancelsTimer() {
+		final long hour = 60 * 60 * 1000L;
+		for( Deadline deadline : new Deadline [] { Deadline.startWallClock( hour ), 
+				Deadline.startThreadCpuTime( hour ), Deadline.startProcessCpuTime( hour ) } ) {
+			assertFalse( deadline.hasExpired() );
+			assertTrue( deadline.isTimerPending() );
+			
+			deadline.expire();
+			assertTrue( deadline.hasExpired() );
+			assertFalse( deadline.isTimerPending() );
+		}
+	}
+	
+	/**
+	 * CPU time burned by another thread is charged to a process CPU-time deadline,
+	 * but not to a thread CPU-time deadline started by the (idle) calling thread.
+	 */
+	
+	@Test
+	public void testProcessCpuTimeChargesOtherThreads() throws InterruptedException {
+		final Deadline process = Deadline.startProcessCpuTime( 100 );
+		final Deadline thread = Deadline.startThreadCpuTime( 100 );
+		
+		final AtomicBoolean stop = new AtomicBoolean();
+		Thread worker = new Thread() {
+			@Override
+			public void run() {
+				long x = 0;
+				while( !stop.get() )
+					x = x * 6364136223846793005L + 1442695040888963407L;
+				sink = x;
+			}
+		};
+		worker.start();
+		try {
+			assertTrue( "process CPU-time deadline did not expire", awaitExpiry( process ) );
+		}
+		finally {
+			stop.set( true );
+			worker.join();
+		}
+		
+		assertFalse( thread.hasExpired() );
+		thread.expire();
+		assertTrue( thread.hasExpired() );
+		assertFalse( thread.isTimerPending() );
+	}
+	
+	@Test
+	public void testNonPositiveLimitHasExpired() {
+		assertTrue( Deadline.startWallClock( 0 ).hasExpired() );
+		assertTrue( Deadline.startThreadCpuTime( 0 ).hasExpired() );
+		assertTrue( Deadline.startProcessCpuTime( -1 ).hasExpired() );
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
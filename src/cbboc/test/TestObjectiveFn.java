@@ -0,0 +1,610 @@
+package cbboc.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import cbboc.CBBOC;
+import cbboc.FlipSession;
+import cbboc.ImprovementTrace;
+import cbboc.ObjectiveFn;
+import cbboc.ProblemInstance;
+import cbboc.WalshSession;
+import cbboc.util.PackedBits;
+
+public class TestObjectiveFn {
+	
+	private static final int NUM_THREADS = 8;
+	
+	private static ProblemInstance sampleInstance() throws IOException {
+		String root = System.getProperty( "user.dir" );
+		String path = root + "/resources/sample2/testing/00000.txt";
+		return new ProblemInstance( new FileInputStream( new File( path ) ) );
+	}
+	
+	private static boolean [] randomBitvector( Random random, int length ) {
+		boolean [] result = new boolean [ length ];
+		for( int i=0; i<length; ++i )
+			result[ i ] = random.nextBoolean();
+		
+		return result;
+	}
+	
+	private static void runConcurrently( Runnable task ) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch( 1 );
+		final AtomicReference< Throwable > failure = new AtomicReference< Throwable >();
+		Thread [] threads = new Thread [ NUM_THREADS ];
+		for( int t=0; t<NUM_THREADS; ++t ) {
+			threads[ t ] = new Thread( new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						task.run();
+					}
+					catch( Throwable ex ) {
+						failure.compareAndSet( null, ex );
+					}
+				}
+			} );
+			threads[ t ].start();
+		}
+		
+		start.countDown();
+		for( Thread thread : threads )
+			thread.join();
+		
+		assertNull( "worker failed: " + failure.get(), failure.get() );
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * Exhausts a shared budget from several threads, mixing single and incremental 
+	 * evaluations, and checks that the evaluations charged are exactly those performed.
+	 */
+	
+	@Test
+	public void testConcurrentBudgetIsNeverOverdrawn() throws IOException, InterruptedException {
+		final long budget = 200000;
+		final AtomicLong sharedBudget = new AtomicLong( budget );
+		final ObjectiveFn fn = new ObjectiveFn( sampleInstance(), ObjectiveFn.TimingMode.UNTIMED, sharedBudget );
+		final AtomicLong performed = new AtomicLong();
+		final AtomicLong seeds = new AtomicLong();
+		final double [] bestSeen = new double [ NUM_THREADS ];
+		
+		runConcurrently( new Runnable() {
+			@Override
+			public void run() {
+				final int id = (int)seeds.getAndIncrement();
+				Random random = new Random( id );
+				double best = Double.NEGATIVE_INFINITY;
+				long count = 0;
+				try {
+					FlipSession session = fn.newFlipSession( randomBitvector( random, fn.getNumGenes() ) );
+					++count;
+					best = session.value();
+					while( true ) {
+						final double value = random.nextBoolean() ? 
+							fn.value( randomBitvector( random, fn.getNumGenes() ) ) : 
+							session.flip( random.nextInt( fn.getNumGenes() ) );
+						++count;
+						best = Math.max( best, value );
+					}
+				}
+				catch( CBBOC.EvaluationsExceededException ex ) {
+					// budget exhausted
+				}
+				finally {
+					performed.addAndGet( count );
+					bestSeen[ id ] = best;
+				}
+			}
+		} );
+		
+		assertEquals( budget, performed.get() );
+		assertEquals( 0, fn.getRemainingEvaluations() );
+		assertEquals( 0, sharedBudget.get() );
+		
+		double best = Double.NEGATIVE_INFINITY;
+		for( double b : bestSeen )
+			best = Math.max( best, b );
+		assertEquals( best, fn.getRemainingEvaluationsAtBestValue().getRight(), 0.0 );
+	}
+	
+	///////////////////////////////
+	
+	@Test
+	public void testConcurrentChargesMatchEvaluations() throws IOException, InterruptedException {
+		final long budget = 1000000;
+		final int iterationsPerThread = 5000;
+		final int batchSize = 3;
+		final ObjectiveFn fn = new ObjectiveFn( sampleInstance(), ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( budget ) );
+		final AtomicLong seeds = new AtomicLong();
+		
+		runConcurrently( new Runnable() {
+			@Override
+			public void run() {
+				Random random = new Random( seeds.getAndIncrement() );
+				boolean [][] batch = new boolean [ batchSize ][];
+				double [] results = new double [ batchSize ];
+				for( int i=0; i<iterationsPerThread; ++i ) {
+					fn.value( randomBitvector( random, fn.getNumGenes() ) );
+					for( int j=0; j<batchSize; ++j )
+						batch[ j ] = randomBitvector( random, fn.getNumGenes() );
+					fn.valueBatch( batch, results );
+				}
+			}
+		} );
+		
+		final long performed = (long)NUM_THREADS * iterationsPerThread * ( 1 + batchSize );
+		assertEquals( budget - performed, fn.getRemainingEvaluations() );
+		final long remainingAtBest = fn.getRemainingEvaluationsAtBestValue().getLeft(); 
+		assertTrue( remainingAtBest >= fn.getRemainingEvaluations() && remainingAtBest < budget );
+	}
+	
+	@Test
+	public void testBestCandidate() throws IOException {
+		final ProblemInstance instance = sampleInstance();
+		final ObjectiveFn fn = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 10000 ) );
+		final ObjectiveFn check = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 10000 ) );
+		assertNull( fn.getBestCandidate() );
+		assertEquals( -1L, (long)fn.getRemainingEvaluationsAtBestValue().getLeft() );
+		
+		Random random = new Random( 1 );
+		boolean [] best = null;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for( int i=0; i<100; ++i ) {
+			boolean [] candidate = randomBitvector( random, fn.getNumGenes() );
+			final double value = fn.value( candidate );
+			if( value > bestValue ) {
+				bestValue = value;
+				best = candidate.clone();
+			}
+		}
+		assertArrayEquals( best, fn.getBestCandidate() );
+		assertEquals( bestValue, fn.getRemainingEvaluationsAtBestValue().getRight(), 0.0 );
+		
+		// probes made through a flip session yield the flipped candidate:
+		FlipSession session = fn.newFlipSession( fn.getBestCandidate() );
+		for( int i=0; i<session.getNumGenes(); ++i ) {
+			if( session.valueIfFlipped( i ) > bestValue ) {
+				bestValue = session.flip( i );
+				assertEquals( bestValue, check.value( fn.getBestCandidate() ), 1e-9 );
+			}
+		}
+		assertArrayEquals( session.getIncumbent(), fn.getBestCandidate() );
+		assertEquals( bestValue, fn.getRemainingEvaluationsAtBestValue().getRight(), 0.0 );
+	}
+	
+	@Test
+	public void testTraceRecordsImprovements() throws IOException {
+		final long budget = 1000;
+		final ObjectiveFn fn = new ObjectiveFn( sampleInstance(), ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( budget ) );
+		fn.enableTrace( 1000 );
+		
+		Random random = new Random( 0 );
+		double best = Double.NEGATIVE_INFINITY;
+		int numImprovements = 0;
+		for( int i=0; i<budget; ++i ) {
+			final double value = fn.value( randomBitvector( random, fn.getNumGenes() ) );
+			if( value > best ) {
+				best = value;
+				++numImprovements;
+			}
+		}
+		
+		ImprovementTrace.Curve curve = fn.getTrace().toCurve();
+		assertEquals( numImprovements, curve.size() );
+		assertEquals( budget, curve.getBudget() );
+		assertEquals( 1, curve.getEvaluations( 0 ) );
+		assertEquals( best, curve.getValue( curve.size() - 1 ), 0.0 );
+		assertEquals( budget - fn.getRemainingEvaluationsAtBestValue().getLeft(), curve.getEvaluations( curve.size() - 1 ) );
+		for( int i=1; i<curve.size(); ++i ) {
+			assertTrue( curve.getValue( i ) > curve.getValue( i - 1 ) );
+			assertTrue( curve.getEvaluations( i ) > curve.getEvaluations( i - 1 ) );
+		}
+		
+		assertTrue( curve.areaUnderCurve() <= best );
+		assertTrue( curve.areaUnderCurve() >= curve.getValue( 0 ) * ( budget - 1 ) / budget );
+		assertEquals( curve.getEvaluations( curve.size() - 1 ), curve.evaluationsToTarget( best ) );
+		assertEquals( -1, curve.evaluationsToTarget( best + 1.0 ) );
+		
+		assertFalse( curve.isTruncated() );
+	}
+	
+	/**
+	 * Replays the run of a full trace with a ring of 2, which wraps: the first and latest 
+	 * improvements survive, and the area and times to target agree with the full trace.
+	 */
+	
+	@Test
+	public void testTruncatedTrace() throws IOException {
+		final long budget = 1000;
+		ImprovementTrace.Curve [] curves = new ImprovementTrace.Curve [ 2 ];
+		final int [] capacities = { 1000, 2 };
+		for( int c=0; c<capacities.length; ++c ) {
+			final ObjectiveFn fn = new ObjectiveFn( sampleInstance(), ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( budget ) );
+			fn.enableTrace( capacities[ c ] );
+			Random random = new Random( 0 );
+			for( int i=0; i<budget; ++i )
+				fn.value( randomBitvector( random, fn.getNumGenes() ) );
+			curves[ c ] = fn.getTrace().toCurve();
+		}
+		
+		final ImprovementTrace.Curve full = curves[ 0 ], small = curves[ 1 ];
+		final int n = full.size();
+		assertTrue( "too few improvements to wrap: " + n, n > 4 );
+		assertFalse( full.isTruncated() );
+		assertTrue( small.isTruncated() );
+		// first, last dropped, and the ring of 2:
+		assertEquals( 4, small.size() );
+		assertEquals( n - 4, small.getNumDropped() );
+		
+		assertEquals( full.getEvaluations( 0 ), small.getEvaluations( 0 ) );
+		assertEquals( full.getValue( n - 1 ), small.getValue( 3 ), 0.0 );
+		assertEquals( full.areaUnderCurve(), small.areaUnderCurve(), 1e-9 );
+		
+		// exact outside the dropped span, an upper bound within it:
+		assertEquals( full.evaluationsToTarget( full.getValue( 0 ) ), small.evaluationsToTarget( full.getValue( 0 ) ) );
+		assertEquals( full.evaluationsToTarget( full.getValue( n - 2 ) ), small.evaluationsToTarget( full.getValue( n - 2 ) ) );
+		assertEquals( full.evaluationsToTarget( full.getValue( n - 1 ) ), small.evaluationsToTarget( full.getValue( n - 1 ) ) );
+		assertTrue( small.evaluationsToTarget( full.getValue( 1 ) ) >= full.evaluationsToTarget( full.getValue( 1 ) ) );
+	}
+	
+	/**
+	 * Improvements may be recorded out of evaluation order when evaluating concurrently:
+	 * the curve must still be monotone, and its area consistent with its points.
+	 */
+	
+	@Test
+	public void testConcurrentTrace() throws IOException, InterruptedException {
+		final long budget = 200000;
+		for( int capacity : new int [] { 1000, 2 } ) {
+			final ObjectiveFn fn = new ObjectiveFn( sampleInstance(), ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( budget ) );
+			fn.enableTrace( capacity );
+			final AtomicLong seeds = new AtomicLong();
+			runConcurrently( new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random( seeds.getAndIncrement() );
+					try {
+						while( true )
+							fn.value( randomBitvector( random, fn.getNumGenes() ) );
+					}
+					catch( CBBOC.EvaluationsExceededException ex ) {
+						// budget exhausted
+					}
+				}
+			} );
+			
+			final ImprovementTrace.Curve curve = fn.getTrace().toCurve();
+			final double best = fn.getRemainingEvaluationsAtBestValue().getRight();
+			assertEquals( best, curve.getValue( curve.size() - 1 ), 0.0 );
+			for( int i=1; i<curve.size(); ++i ) {
+				assertTrue( curve.toString(), curve.getValue( i ) > curve.getValue( i - 1 ) );
+				assertTrue( curve.toString(), curve.getEvaluations( i ) >= curve.getEvaluations( i - 1 ) );
+			}
+			
+			final double auc = curve.areaUnderCurve();
+			assertTrue( auc <= best );
+			assertTrue( auc >= curve.getValue( 0 ) * ( budget - curve.getEvaluations( 0 ) ) / budget );
+			if( !curve.isTruncated() ) {
+				double area = 0.0;
+				for( int i=0; i<curve.size(); ++i ) {
+					final long end = i + 1 < curve.size() ? curve.getEvaluations( i + 1 ) : budget;
+					area += curve.getValue( i ) * ( end - curve.getEvaluations( i ) );
+				}
+				assertEquals( area / budget, auc, 1e-9 );
+			}
+		}
+	}
+	
+	/**
+	 * Follows a random walk with a Walsh session and an adjacency-list session side by side, 
+	 * checking the neighbour values against each other and against full evaluation.
+	 */
+	
+	@Test
+	public void testWalshSessionMatchesFullEvaluation() throws IOException {
+		final ProblemInstance instance = sampleInstance();
+		final ObjectiveFn fn = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 1000000 ) );
+		final ObjectiveFn check = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 1000000 ) );
+		final int n = fn.getNumGenes();
+		
+		Random random = new Random( 2 );
+		boolean [] initial = randomBitvector( random, n );
+		WalshSession walsh = fn.newWalshSession( initial );
+		FlipSession adjacency = check.newFlipSession( initial );
+		assertEquals( check.value( initial ), walsh.value(), 1e-9 );
+		
+		for( int step=0; step<200; ++step ) {
+			final int i = random.nextInt( n );
+			assertEquals( adjacency.valueIfFlipped( i ), walsh.valueIfFlipped( i ), 1e-9 );
+			walsh.flip( i );
+			adjacency.flip( i );
+			assertArrayEquals( adjacency.getIncumbent(), walsh.getIncumbent() );
+			assertEquals( check.value( walsh.getIncumbent() ), walsh.value(), 1e-9 );
+		}
+		
+		// bestFlip is charged the whole neighbourhood, after which its value is free:
+		long remaining = fn.getRemainingEvaluations();
+		final int best = walsh.bestFlip();
+		assertEquals( remaining - n, fn.getRemainingEvaluations() );
+		for( int i=0; i<n; ++i )
+			assertTrue( adjacency.valueIfFlipped( i ) <= adjacency.valueIfFlipped( best ) + 1e-9 );
+		
+		remaining = fn.getRemainingEvaluations();
+		assertEquals( adjacency.valueIfFlipped( best ), walsh.valueIfFlipped( best ), 1e-9 );
+		assertEquals( remaining, fn.getRemainingEvaluations() );
+	}
+	
+	/**
+	 * Both kinds of session charge alike: once per probe, not again for re-probing 
+	 * or flipping the last probed bit, but again once another bit has been probed.
+	 */
+	
+	@Test
+	public void testSessionsChargeRepeatedProbesAlike() throws IOException {
+		final ProblemInstance instance = sampleInstance();
+		final ObjectiveFn walshFn = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 1000 ) );
+		final ObjectiveFn adjacencyFn = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 1000 ) );
+		
+		final boolean [] initial = randomBitvector( new Random( 3 ), instance.getNumGenes() );
+		final FlipSession [] sessions = { walshFn.newWalshSession( initial ), adjacencyFn.newFlipSession( initial ) };
+		final ObjectiveFn [] fns = { walshFn, adjacencyFn };
+		for( int s=0; s<sessions.length; ++s ) {
+			final FlipSession session = sessions[ s ];
+			final ObjectiveFn fn = fns[ s ];
+			assertEquals( 999, fn.getRemainingEvaluations() );
+			
+			final double value = session.valueIfFlipped( 0 );
+			assertEquals( value, session.valueIfFlipped( 0 ), 0.0 );
+			assertEquals( 998, fn.getRemainingEvaluations() );
+			
+			session.valueIfFlipped( 1 );
+			assertEquals( value, session.valueIfFlipped( 0 ), 0.0 );
+			assertEquals( 996, fn.getRemainingEvaluations() );
+			
+			assertEquals( value, session.flip( 0 ), 0.0 );
+			assertEquals( 996, fn.getRemainingEvaluations() );
+			session.valueIfFlipped( 0 );
+			assertEquals( 995, fn.getRemainingEvaluations() );
+		}
+	}
+	
+	/**
+	 * Evaluates the same candidates as boolean [] and packed into long [], on instances
+	 * whose number of genes is not a multiple of 64, until both budgets are exhausted:
+	 * the values, the evaluations charged and the best found must be identical.
+	 */
+	
+	@Test
+	public void testPackedEvaluationMatchesBoolean() throws IOException {
+		final long budget = 500;
+		String root = System.getProperty( "user.dir" );
+		for( String sample : new String [] { "sample1", "sample2", "sample3", "sample4" } ) {
+			String path = root + "/resources/" + sample + "/testing/00000.txt";
+			ProblemInstance instance = new ProblemInstance( new FileInputStream( new File( path ) ) );
+			assertTrue( instance.getNumGenes() % 64 != 0 );
+			
+			final ObjectiveFn unpacked = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( budget ) );
+			final ObjectiveFn packed = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( budget ) );
+			
+			Random random = new Random( 3 );
+			for( long i=0; i<=budget; ++i ) {
+				final boolean [] candidate = randomBitvector( random, instance.getNumGenes() );
+				final long [] packedCandidate = PackedBits.fromBooleans( candidate );
+				assertEquals( PackedBits.numWords( candidate.length ), packedCandidate.length );
+				
+				Double expected = null, actual = null;
+				try {
+					expected = unpacked.value( candidate );
+				}
+				catch( CBBOC.EvaluationsExceededException ex ) {
+					// budget exhausted
+				}
+				try {
+					actual = packed.value( packedCandidate );
+				}
+				catch( CBBOC.EvaluationsExceededException ex ) {
+					// budget exhausted
+				}
+				
+				// exhausted after exactly budget evaluations:
+				assertEquals( sample, i == budget, expected == null );
+				assertEquals( sample, expected, actual );
+				assertEquals( unpacked.getRemainingEvaluations(), packed.getRemainingEvaluations() );
+			}
+			
+			assertEquals( 0, packed.getRemainingEvaluations() );
+			assertEquals( unpacked.getRemainingEvaluationsAtBestValue(), packed.getRemainingEvaluationsAtBestValue() );
+			assertArrayEquals( unpacked.getBestCandidate(), packed.getBestCandidate() );
+		}
+	}
+	
+	private static boolean [][] randomBatch( Random random, int size, int length ) {
+		boolean [][] result = new boolean [ size ][];
+		for( int i=0; i<size; ++i )
+			result[ i ] = randomBitvector( random, length );
+		
+		return result;
+	}
+	
+	private static Executor [] parallelExecutors() {
+		return new Executor [] { new ForkJoinPool( NUM_THREADS ), Executors.newFixedThreadPool( NUM_THREADS ) };
+	}
+	
+	private static void shutdown( Executor [] executors ) {
+		for( Executor executor : executors )
+			( (ExecutorService)executor ).shutdownNow();
+	}
+	
+	/**
+	 * A batch evaluated in parallel (via a ForkJoinPool or another Executor) 
+	 * has the same values, budget accounting and best as sequential evaluation.
+	 */
+	
+	@Test
+	public void testParallelBatchMatchesSequential() throws IOException {
+		final ProblemInstance instance = sampleInstance();
+		final boolean [][] batch = randomBatch( new Random( 4 ), 257, instance.getNumGenes() );
+		
+		final ObjectiveFn sequential = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 1000 ) );
+		final double [] expected = new double [ batch.length ];
+		for( int i=0; i<batch.length; ++i )
+			expected[ i ] = sequential.value( batch[ i ] );
+		
+		Executor [] executors = parallelExecutors();
+		try {
+			for( Executor executor : executors ) {
+				final ObjectiveFn fn = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 1000 ) );
+				final double [] results = new double [ batch.length ];
+				fn.valueBatch( batch, results, executor );
+				
+				assertArrayEquals( expected, results, 0.0 );
+				assertEquals( sequential.getRemainingEvaluations(), fn.getRemainingEvaluations() );
+				assertEquals( sequential.getRemainingEvaluationsAtBestValue(), fn.getRemainingEvaluationsAtBestValue() );
+				assertArrayEquals( sequential.getBestCandidate(), fn.getBestCandidate() );
+			}
+		}
+		finally {
+			shutdown( executors );
+		}
+	}
+	
+	/**
+	 * A parallel batch which crosses the budget is charged exactly once for each candidate 
+	 * that fits, evaluates only those, and then throws EvaluationsExceededException.
+	 */
+	
+	@Test
+	public void testParallelBatchCrossingBudget() throws IOException {
+		final int budget = 100;
+		final ProblemInstance instance = sampleInstance();
+		final boolean [][] batch = randomBatch( new Random( 5 ), 150, instance.getNumGenes() );
+		
+		final ObjectiveFn sequential = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( budget ) );
+		final double [] expected = new double [ budget ];
+		for( int i=0; i<budget; ++i )
+			expected[ i ] = sequential.value( batch[ i ] );
+		
+		Executor [] executors = parallelExecutors();
+		try {
+			for( Executor executor : executors ) {
+				final AtomicLong remaining = new AtomicLong( budget );
+				final ObjectiveFn fn = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, remaining );
+				final double [] results = new double [ batch.length ];
+				Arrays.fill( results, Double.NaN );
+				try {
+					fn.valueBatch( batch, results, executor );
+					fail( "EvaluationsExceededException expected" );
+				}
+				catch( CBBOC.EvaluationsExceededException ex ) {
+					// expected
+				}
+				
+				assertEquals( 0, remaining.get() );
+				assertArrayEquals( expected, Arrays.copyOf( results, budget ), 0.0 );
+				for( int i=budget; i<batch.length; ++i )
+					assertTrue( "candidate " + i + " evaluated beyond the budget", Double.isNaN( results[ i ] ) );
+				assertEquals( sequential.getRemainingEvaluationsAtBestValue(), fn.getRemainingEvaluationsAtBestValue() );
+				
+				// nothing more is evaluated or charged once the budget is exhausted:
+				Arrays.fill( results, Double.NaN );
+				try {
+					fn.valueBatch( batch, results, executor );
+					fail( "EvaluationsExceededException expected" );
+				}
+				catch( CBBOC.EvaluationsExceededException ex ) {
+					// expected
+				}
+				assertEquals( 0, remaining.get() );
+				assertTrue( Double.isNaN( results[ 0 ] ) );
+			}
+		}
+		finally {
+			shutdown( executors );
+		}
+	}
+	
+	/**
+	 * With the best candidate repeated within a batch evaluated on several threads,
+	 * the best is recorded at its first occurrence, as it would be sequentially; 
+	 * and with batches submitted from several threads at once, the best is the best of them all.
+	 */
+	
+	@Test
+	public void testParallelBatchBestSoFar() throws IOException, InterruptedException {
+		final ProblemInstance instance = sampleInstance();
+		final int numGenes = instance.getNumGenes();
+		final boolean [][] batch = randomBatch( new Random( 6 ), 200, numGenes );
+		
+		final ObjectiveFn probe = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( batch.length ) );
+		final double [] values = new double [ batch.length ];
+		probe.valueBatch( batch, values );
+		int best = 0;
+		for( int i=1; i<values.length; ++i )
+			if( values[ i ] > values[ best ] )
+				best = i;
+		
+		// move the best to the middle and repeat it near the end:
+		final int first = batch.length / 2, repeat = batch.length - 3;
+		final boolean [] bestCandidate = batch[ best ];
+		batch[ best ] = batch[ first ];
+		batch[ first ] = bestCandidate.clone();
+		batch[ repeat ] = bestCandidate.clone();
+		
+		final Executor [] executors = parallelExecutors();
+		try {
+			for( final Executor executor : executors ) {
+				final long budget = 1000;
+				final ObjectiveFn fn = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( budget ) );
+				fn.valueBatch( batch, new double [ batch.length ], executor );
+				
+				assertEquals( values[ best ], fn.getRemainingEvaluationsAtBestValue().getRight(), 0.0 );
+				assertEquals( budget - first - 1, (long)fn.getRemainingEvaluationsAtBestValue().getLeft() );
+				assertArrayEquals( bestCandidate, fn.getBestCandidate() );
+				
+				final ObjectiveFn shared = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( NUM_THREADS * budget ) );
+				final AtomicReference< Double > maxSeen = new AtomicReference< Double >( Double.NEGATIVE_INFINITY );
+				final AtomicLong seed = new AtomicLong();
+				runConcurrently( new Runnable() {
+					@Override
+					public void run() {
+						boolean [][] own = randomBatch( new Random( seed.incrementAndGet() ), 100, numGenes );
+						double [] results = new double [ own.length ];
+						shared.valueBatch( own, results, executor );
+						for( double v : results ) {
+							Double current = maxSeen.get();
+							while( v > current && !maxSeen.compareAndSet( current, v ) )
+								current = maxSeen.get();
+						}
+					}
+				} );
+				
+				assertEquals( NUM_THREADS * ( budget - 100 ), shared.getRemainingEvaluations() );
+				assertEquals( maxSeen.get(), shared.getRemainingEvaluationsAtBestValue().getRight(), 0.0 );
+				assertEquals( maxSeen.get(), shared.value( shared.getBestCandidate() ), 0.0 );
+			}
+		}
+		finally {
+			shutdown( executors );
+		}
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,100 @@
+package cbboc.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+
+import cbboc.Competitor;
+import cbboc.TrainingCategory;
+import cbboc.examples.NAHCCompetitor;
+import cbboc.examples.RandomCompetitor;
+import cbboc.examples.SAHHCompetitor;
+import cbboc.util.RNG;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Seeded runs of the thread-safe example competitors on part of resources/sample1,
+ * tested serially and on several threads, must produce the same results, 
+ * as must loading the testing instances eagerly and lazily.
+ */
+
+public class TestParallelTesting {
+	
+	private static final long SEED = 20160711L;
+	private static final int NUM_TRAINING = 2;
+	private static final int NUM_TESTING = 4;
+	private static final int NUM_TESTING_THREADS = 4;
+	
+	private static final String [] WALL_CLOCK_FIELDS = { "datetime", "trainingWallClockUsage", "testingWallClockUsage" };
+	
+	///////////////////////////////
+	
+	/**
+	 * @return the OutputResults JSON of a run of client with the given number of testing threads,
+	 * without its wall-clock fields.
+	 */
+	
+	private static JsonObject seededRun( Competitor client, int numTestingThreads ) throws IOException {
+		return seededRun( client, numTestingThreads, false );
+	}
+	
+	private static JsonObject seededRun( Competitor client, int numTestingThreads, boolean lazyTesting ) throws IOException {
+		Path userDir = TestResultsJournal.newUserDir( "sample1", NUM_TRAINING, NUM_TESTING );
+		System.setProperty( "cbboc.lazyTesting", Boolean.toString( lazyTesting ) );
+		try {
+			RNG.setSeed( SEED );
+			assertTrue( TestResultsJournal.run( userDir, client, numTestingThreads, false ) );
+			
+			JsonObject result = TestResultsJournal.readSummary( userDir );
+			for( String field : WALL_CLOCK_FIELDS ) {
+				assertNotNull( field, result.remove( field ) );
+			}
+			return result;
+		}
+		finally {
+			System.clearProperty( "cbboc.lazyTesting" );
+			RNG.reseedRandomly();
+			TestResultsJournal.deleteRecursively( userDir );
+		}
+	}
+	
+	private static void assertParallelMatchesSerial( Competitor serial, Competitor parallel ) throws IOException {
+		assertTrue( parallel.isThreadSafe() );
+		
+		JsonObject expected = seededRun( serial, 1 );
+		assertEquals( NUM_TESTING, expected.getAsJsonArray( "testingResults" ).size() );
+		assertEquals( expected, seededRun( parallel, NUM_TESTING_THREADS ) );
+	}
+	
+	///////////////////////////////
+	
+	@Test
+	public void testRandomCompetitor() throws IOException {
+		assertParallelMatchesSerial( new RandomCompetitor(), new RandomCompetitor() );
+	}
+	
+	@Test
+	public void testNAHCCompetitor() throws IOException {
+		assertParallelMatchesSerial( new NAHCCompetitor(), new NAHCCompetitor() );
+	}
+	
+	@Test
+	public void testSAHHCompetitor() throws IOException {
+		assertParallelMatchesSerial( new SAHHCompetitor( TrainingCategory.SHORT, SAHHCompetitor.Schedule.ADAPTIVE ),
+			new SAHHCompetitor( TrainingCategory.SHORT, SAHHCompetitor.Schedule.ADAPTIVE ) );
+	}
+	
+	@Test
+	public void testLazyTestingMatchesEager() throws IOException {
+		final Competitor client = new SAHHCompetitor( TrainingCategory.SHORT, SAHHCompetitor.Schedule.ADAPTIVE );
+		assertEquals( seededRun( client, 1 ), seededRun( client, NUM_TESTING_THREADS, true ) );
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
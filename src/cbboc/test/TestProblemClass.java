@@ -7,15 +7,20 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.List;
 
 import org.junit.Test;
 
+import cbboc.CBBOC;
+import cbboc.InstanceCache;
+import cbboc.ObjectiveFn;
 import cbboc.ProblemClass;
 import cbboc.ProblemInstance;
 import cbboc.TrainingCategory;
 
 public class TestProblemClass {
-
+	
 	@Test
 	public void test() throws IOException {
 		String root = System.getProperty( "user.dir" );
@@ -28,11 +33,122 @@ public class TestProblemClass {
 		ProblemClass shortTraining = new ProblemClass( Paths.get( path ), TrainingCategory.SHORT );
 		assertEquals( 200, shortTraining.getTrainingInstances().size() );
 		assertEquals( 50, shortTraining.getTestingInstances().size() );		
-
+		
 		ProblemClass longTraining = new ProblemClass( Paths.get( path ), TrainingCategory.LONG );
 		assertEquals( 200, longTraining.getTrainingInstances().size() );
 		assertEquals( 50, longTraining.getTestingInstances().size() );		
 	}
+	
+	@Test
+	public void testLazyTestingMatchesEager() throws IOException {
+		String root = System.getProperty( "user.dir" );
+		Path path = Paths.get( root + "/resources/sample2" );
+		
+		List< ObjectiveFn > eager = new ProblemClass( path, TrainingCategory.NONE ).getTestingInstances();
+		List< ObjectiveFn > lazy = new ProblemClass( path, TrainingCategory.NONE, ProblemClass.Loading.LAZY_TESTING ).getTestingInstances();
+		assertEquals( eager.size(), lazy.size() );
+		
+		for( int i=0; i<eager.size(); ++i ) {
+			ObjectiveFn e = eager.get( i );
+			ObjectiveFn l = lazy.get( i );
+			assertEquals( e.getNumGenes(), l.getNumGenes() );
+			assertEquals( e.getMaxEvalsPerInstance(), l.getMaxEvalsPerInstance() );
+			assertEquals( e.getRemainingEvaluations(), l.getRemainingEvaluations() );
+		}
+	}
+	
+	/**
+	 * Skipped testing instances are not loaded unless requested, 
+	 * and instances can still be requested once loading has been stopped. 
+	 */
+	
+	@Test
+	public void testLazyTestingSkipsInstances() throws IOException {
+		String root = System.getProperty( "user.dir" );
+		Path path = Paths.get( root + "/resources/sample2" );
+		
+		try {
+			InstanceCache.clear();
+			final int numTesting = new ProblemClass( path, TrainingCategory.NONE ).getTestingInstances().size();
+			InstanceCache.clear();
+			
+			BitSet skipped = new BitSet();
+			skipped.set( 0, numTesting - 1 );
+			ProblemClass lazy = new ProblemClass( path, TrainingCategory.NONE, ProblemClass.Loading.LAZY_TESTING, skipped );
+			try {
+				assertNotNull( lazy.getTestingInstances().get( numTesting - 1 ) );
+				assertEquals( 1, InstanceCache.getMisses() );
+			}
+			finally {
+				lazy.close();
+			}
+			
+			assertNotNull( lazy.getTestingInstances().get( 0 ) );
+			assertEquals( 2, InstanceCache.getMisses() );
+		}
+		finally {
+			InstanceCache.clear();
+		}
+	}
+	
+	/**
+	 * The instances of a ProblemClass are timed, and their deadline has not been started, 
+	 * so the session fails on its first evaluation, just after the decomposition has been built. 
+	 */
+	
+	private static void buildWalshDecomposition( ObjectiveFn fn ) {
+		try {
+			fn.newWalshSession( new boolean [ fn.getNumGenes() ] );
+			fail( "deadline not started, so time exceeded expected" );
+		}
+		catch( CBBOC.TimeExceededException ex ) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testInstanceCache() throws IOException {
+		String root = System.getProperty( "user.dir" );
+		Path path = Paths.get( root + "/resources/sample2" );
+		
+		final long capacity = InstanceCache.getCapacityBytes();
+		try {
+			InstanceCache.clear();
+			ProblemClass first = new ProblemClass( path, TrainingCategory.SHORT );
+			final int numFiles = first.getTrainingInstances().size() + first.getTestingInstances().size();
+			assertEquals( 0, InstanceCache.getHits() );
+			assertEquals( numFiles, InstanceCache.getMisses() );
+			assertEquals( numFiles, InstanceCache.size() );
+			
+			ProblemClass second = new ProblemClass( path, TrainingCategory.SHORT );
+			assertEquals( numFiles, InstanceCache.getHits() );
+			assertEquals( numFiles, InstanceCache.getMisses() );
+			
+			// shared instances, but fresh wrappers and budgets:
+			ObjectiveFn a = first.getTestingInstances().get( 0 );
+			ObjectiveFn b = second.getTestingInstances().get( 0 );
+			assertNotSame( a, b );
+			assertEquals( a.getRemainingEvaluations(), b.getRemainingEvaluations() );
+			
+			// building the (shared) Walsh decomposition of a cached instance charges the cache for it:
+			final long usedBytes = InstanceCache.getUsedBytes();
+			buildWalshDecomposition( a );
+			final long walshBytes = InstanceCache.getUsedBytes() - usedBytes;
+			assertTrue( "Walsh decomposition not charged", walshBytes > 0 );
+			buildWalshDecomposition( b );
+			assertEquals( usedBytes + walshBytes, InstanceCache.getUsedBytes() );
+			
+			InstanceCache.setCapacityBytes( 0 );
+			assertEquals( 0, InstanceCache.size() );
+			assertEquals( 0, InstanceCache.getUsedBytes() );
+			new ProblemClass( path, TrainingCategory.NONE );
+			assertEquals( 0, InstanceCache.size() );
+		}
+		finally {
+			InstanceCache.setCapacityBytes( capacity );
+			InstanceCache.clear();
+		}
+	}
 }
 
 // End //////////////////////////////////////////////////////////////
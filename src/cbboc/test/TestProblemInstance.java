@@ -2,14 +2,23 @@ package cbboc.test;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 
+import cbboc.ObjectiveFn;
 import cbboc.ProblemInstance;
 
 public class TestProblemInstance {
@@ -31,6 +40,75 @@ public class TestProblemInstance {
 		assertEquals( 13, instance.getNumGenes() );
 		// assertEquals( 100000, instance.getMaxEvalsPerInstance() );
 	}
+	
+	///////////////////////////////
+	
+	private static ProblemInstance parse( String text ) throws IOException {
+		return new ProblemInstance( new ByteArrayInputStream( text.getBytes( StandardCharsets.US_ASCII ) ) );
+	}
+
+	@Test
+	public void testParsedValues() throws IOException {
+		// trailing tokens on a line are ignored, as they were by the Scanner-based parser:
+		ProblemInstance instance = parse( "2 10 1 2 ignored\r\n0 0.25 -1.5e-1\r\n1 1.0 2.0\t\n" );
+		assertEquals( 2, instance.getNumGenes() );
+		assertEquals( 10, instance.getMaxEvalsPerInstance() );
+		
+		ObjectiveFn fn = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 10 ) );
+		assertEquals( 0.25 + 2.0, fn.value( new boolean [] { false, true } ), 0.0 );
+		assertEquals( -0.15 + 1.0, fn.value( new boolean [] { true, false } ), 0.0 );
+	}
+	
+	@Test( expected = InputMismatchException.class )
+	public void testMalformedInt() throws IOException {
+		parse( "2 10 1 2\n0 0.25 0.5\n1x 1.0 2.0\n" );
+	}
+
+	@Test( expected = InputMismatchException.class )
+	public void testMalformedDouble() throws IOException {
+		parse( "2 10 1 2\n0 0.25 0.5\n1 1.0 2..0\n" );
+	}
+	
+	@Test( expected = NoSuchElementException.class )
+	public void testShortRow() throws IOException {
+		parse( "2 10 1 2\n0 0.25\n1 1.0 2.0\n" );
+	}
+
+	@Test( expected = NoSuchElementException.class )
+	public void testMissingRow() throws IOException {
+		parse( "2 10 1 2\n0 0.25 0.5\n" );
+	}
+	
+	///////////////////////////////
+	
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		String root = System.getProperty( "user.dir" );
+		String path = root + "/resources/sample1/testing/00000.txt";
+		ProblemInstance text = new ProblemInstance( new FileInputStream( new File( path ) ) );
+		
+		Path binaryPath = Files.createTempFile( "cbboc", ProblemInstance.BINARY_FILE_EXTENSION );
+		try {
+			text.writeBinary( binaryPath );
+			ProblemInstance binary = ProblemInstance.readBinary( binaryPath );
+			assertEquals( text.getNumGenes(), binary.getNumGenes() );
+			assertEquals( text.getMaxEvalsPerInstance(), binary.getMaxEvalsPerInstance() );
+			
+			ObjectiveFn textFn = new ObjectiveFn( text, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 1000 ) );
+			ObjectiveFn binaryFn = new ObjectiveFn( binary, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 1000 ) );
+			Random random = new Random( 1 );
+			boolean [] candidate = new boolean [ text.getNumGenes() ];
+			for( int i=0; i<1000; ++i ) {
+				for( int j=0; j<candidate.length; ++j )
+					candidate[ j ] = random.nextBoolean();
+				assertEquals( Double.doubleToLongBits( textFn.value( candidate ) ), 
+					Double.doubleToLongBits( binaryFn.value( candidate ) ) );
+			}
+		}
+		finally {
+			Files.delete( binaryPath );
+		}
+	}
 }
 
 // End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,116 @@
+package cbboc.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import cbboc.util.PackedBits;
+import cbboc.util.RNG;
+
+//////////////////////////////////////////////////////////////////////
+
+public class TestRNG {
+	
+	private static long [] draw( RNG.Generator random ) {
+		long [] result = new long [ 4 ];
+		for( int i=0; i<result.length; ++i )
+			result[ i ] = random.nextLong();
+		
+		return result;
+	}
+	
+	///////////////////////////////
+	
+	@Test
+	public void testSeedIsReproducible() {
+		RNG.setSeed( 42 );
+		long [] first = draw( RNG.get() );
+		RNG.setSeed( 42 );
+		assertArrayEquals( first, draw( RNG.get() ) );
+		
+		assertArrayEquals( draw( new RNG.Generator( 7 ) ), draw( new RNG.Generator( 7 ) ) );
+		RNG.Generator reseeded = new RNG.Generator( 1 );
+		reseeded.setSeed( 7 );
+		assertArrayEquals( draw( new RNG.Generator( 7 ) ), draw( reseeded ) );
+	}
+	
+	@Test
+	public void testThreadStreamsDependOnlyOnSeedAndStreamId() throws InterruptedException {
+		final long runSeed = 42;
+		RNG.reseedThread( runSeed, 3 );
+		final long [] here = draw( RNG.get() );
+		RNG.reseedThread( runSeed, 4 );
+		assertFalse( Arrays.equals( here, draw( RNG.get() ) ) );
+		RNG.reseedThread( runSeed + 1, 3 );
+		assertFalse( Arrays.equals( here, draw( RNG.get() ) ) );
+		
+		final AtomicReference< long [] > there = new AtomicReference< long [] >();
+		Thread thread = new Thread( new Runnable() {
+			@Override
+			public void run() {
+				RNG.get().nextLong();
+				RNG.reseedThread( runSeed, 3 );
+				there.set( draw( RNG.get() ) );
+			}
+		} );
+		thread.start();
+		thread.join();
+		assertArrayEquals( here, there.get() );
+	}
+	
+	/**
+	 * Runs (as the harness does) get the same streams when seeded, and different ones otherwise.
+	 */
+	
+	@Test
+	public void testRunSeeds() {
+		try {
+			RNG.reseedRandomly();
+			final long unseeded = RNG.nextRunSeed();
+			assertTrue( unseeded != RNG.nextRunSeed() );
+			
+			RNG.setSeed( 42 );
+			final long seeded = RNG.nextRunSeed();
+			assertEquals( seeded, RNG.nextRunSeed() );
+			
+			RNG.reseedThread( seeded, 0 );
+			final long [] first = draw( RNG.get() );
+			RNG.reseedThread( RNG.nextRunSeed(), 0 );
+			assertArrayEquals( first, draw( RNG.get() ) );
+			
+			RNG.reseedRandomly();
+			RNG.reseedThread( RNG.nextRunSeed(), 0 );
+			final long [] second = draw( RNG.get() );
+			RNG.reseedThread( RNG.nextRunSeed(), 0 );
+			assertFalse( Arrays.equals( second, draw( RNG.get() ) ) );
+		}
+		finally {
+			RNG.reseedRandomly();
+		}
+	}
+	
+	@Test
+	public void testBulkFills() {
+		final int numBits = 130;
+		RNG.Generator random = new RNG.Generator( 5 );
+		
+		long [] packed = new long [ PackedBits.numWords( numBits ) ];
+		random.nextBits( packed, numBits );
+		assertEquals( 0L, packed[ packed.length - 1 ] >>> ( numBits & 63 ) );
+		
+		boolean [] bits = new boolean [ numBits ];
+		int numSet = 0;
+		for( int i=0; i<100; ++i ) {
+			random.nextBooleans( bits );
+			for( boolean b : bits )
+				numSet += b ? 1 : 0;
+		}
+		// Binomial( 13000, 0.5 ) has SD 57:
+		assertEquals( 100 * numBits / 2.0, numSet, 400.0 );
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
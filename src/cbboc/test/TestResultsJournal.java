@@ -0,0 +1,336 @@
+package cbboc.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import cbboc.CBBOC;
+import cbboc.Competitor;
+import cbboc.ObjectiveFn;
+import cbboc.TrainingCategory;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Interrupted and resumed runs of CBBOC on a small copy of resources/sample2,
+ * made in a temporary directory which stands in for "user.dir".
+ */
+
+public class TestResultsJournal {
+	
+	private static final String PROBLEM_CLASS = "tiny";
+	private static final int NUM_TRAINING = 2;
+	private static final int NUM_TESTING = 4;
+	
+	/**
+	 * Evaluates a few random candidates per instance, and fails on the failAt-th call to test().
+	 */
+	
+	private static final class CountingCompetitor extends Competitor {
+		
+		private final int failAt;
+		private int numTested = 0;
+		
+		CountingCompetitor( TrainingCategory trainingCategory, int failAt ) {
+			super( trainingCategory );
+			this.failAt = failAt;
+		}
+		
+		@Override
+		public void train( List< ObjectiveFn > trainingSet, long maxTimeInMilliseconds ) {
+			for( ObjectiveFn fn : trainingSet )
+				evaluate( fn );
+		}
+		
+		@Override
+		public void test( ObjectiveFn testCase, long maxTimeInMilliseconds ) {
+			if( ++numTested == failAt )
+				throw new IllegalStateException( "crash" );
+			evaluate( testCase );
+		}
+		
+		private static void evaluate( ObjectiveFn fn ) {
+			Random random = new Random( 0 );
+			boolean [] candidate = new boolean [ fn.getNumGenes() ];
+			for( int i=0; i<10; ++i ) {
+				for( int j=0; j<candidate.length; ++j )
+					candidate[ j ] = random.nextBoolean();
+				fn.value( candidate );
+			}
+		}
+	}
+	
+	///////////////////////////////
+	
+	private static Path newUserDir() throws IOException {
+		return newUserDir( "sample2", NUM_TRAINING, NUM_TESTING );
+	}
+	
+	/**
+	 * @return a directory holding resources/classFolder.txt and a problem class with the first
+	 * numTraining training and numTesting testing instances of resources/sampleName.
+	 */
+	
+	static Path newUserDir( String sampleName, int numTraining, int numTesting ) throws IOException {
+		Path sample = Paths.get( System.getProperty( "user.dir" ), "resources", sampleName );
+		Path dir = Files.createTempDirectory( "cbboc-journal" );
+		Path resources = Files.createDirectories( dir.resolve( "resources" ) );
+		Files.write( resources.resolve( "classFolder.txt" ), Arrays.asList( PROBLEM_CLASS ), StandardCharsets.UTF_8 );
+		
+		Path root = Files.createDirectories( resources.resolve( PROBLEM_CLASS ) );
+		Files.createDirectories( root.resolve( "results" ) );
+		copyInstances( sample, root, "training", numTraining );
+		copyInstances( sample, root, "testing", numTesting );
+		return dir;
+	}
+	
+	private static void copyInstances( Path sample, Path root, String kind, int numInstances ) throws IOException {
+		List< String > files = Files.readAllLines( sample.resolve( kind + "Files.txt" ), StandardCharsets.UTF_8 );
+		List< String > inventory = new ArrayList< String >();
+		inventory.add( Integer.toString( numInstances ) );
+		Files.createDirectories( root.resolve( kind ) );
+		for( int i=1; i<=numInstances; ++i ) {
+			Files.copy( sample.resolve( files.get( i ) ), root.resolve( files.get( i ) ) );
+			inventory.add( files.get( i ) );
+		}
+		Files.write( root.resolve( kind + "Files.txt" ), inventory, StandardCharsets.UTF_8 );
+	}
+	
+	private static Path resultsDir( Path userDir ) {
+		return userDir.resolve( "resources" ).resolve( PROBLEM_CLASS ).resolve( "results" );
+	}
+	
+	static void deleteRecursively( Path dir ) throws IOException {
+		List< Path > paths = new ArrayList< Path >();
+		DirectoryStream< Path > stream = Files.newDirectoryStream( dir );
+		try {
+			for( Path p : stream )
+				paths.add( p );
+		}
+		finally {
+			stream.close();
+		}
+		for( Path p : paths ) {
+			if( Files.isDirectory( p ) )
+				deleteRecursively( p );
+			else
+				Files.delete( p );
+		}
+		Files.delete( dir );
+	}
+	
+	/**
+	 * Runs client on the problem class in userDir.
+	 * @return whether the run completed (rather than failing in the client).
+	 */
+	
+	private static boolean run( Path userDir, Competitor client, boolean resume ) throws IOException {
+		return run( userDir, client, 1, resume );
+	}
+	
+	static boolean run( Path userDir, Competitor client, int numTestingThreads, boolean resume ) throws IOException {
+		final String previous = System.getProperty( "user.dir" );
+		System.setProperty( "user.dir", userDir.toString() );
+		try {
+			CBBOC.run( client, numTestingThreads, CBBOC.TimeBudget.WALL_CLOCK, resume );
+			return true;
+		}
+		catch( IllegalStateException ex ) {
+			if( !"crash".equals( ex.getMessage() ) )
+				throw ex;
+			return false;
+		}
+		finally {
+			System.setProperty( "user.dir", previous );
+		}
+	}
+	
+	/**
+	 * @return the files in the results directory of userDir with the given extension, in order of name.
+	 */
+	
+	static List< Path > results( Path userDir, String extension ) throws IOException {
+		List< Path > result = new ArrayList< Path >();
+		DirectoryStream< Path > stream = Files.newDirectoryStream( resultsDir( userDir ), "*" + extension );
+		try {
+			for( Path p : stream )
+				result.add( p );
+		}
+		finally {
+			stream.close();
+		}
+		Collections.sort( result, new Comparator< Path >() {
+			@Override
+			public int compare( Path a, Path b ) { return a.toString().compareTo( b.toString() ); }
+		} );
+		return result;
+	}
+	
+	private static List< JsonObject > readJournal( Path file ) throws IOException {
+		List< JsonObject > result = new ArrayList< JsonObject >();
+		for( String line : Files.readAllLines( file, StandardCharsets.UTF_8 ) )
+			result.add( new JsonParser().parse( line ).getAsJsonObject() );
+		
+		return result;
+	}
+	
+	private static int count( List< JsonObject > records, String type ) {
+		int result = 0;
+		for( JsonObject r : records )
+			if( r.get( "type" ).getAsString().equals( type ) )
+				++result;
+		
+		return result;
+	}
+	
+	static JsonObject readSummary( Path userDir ) throws IOException {
+		List< Path > summaries = results( userDir, ".json" );
+		assertEquals( 1, summaries.size() );
+		String json = new String( Files.readAllBytes( summaries.get( 0 ) ), StandardCharsets.UTF_8 );
+		return new JsonParser().parse( json ).getAsJsonObject();
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * A run which fails on its third testing instance leaves a journal of the first two,
+	 * and resuming it tests only the rest, with the testing time of both sessions summed.
+	 */
+	
+	@Test
+	public void testResumeSkipsRecordedInstances() throws IOException {
+		Path userDir = newUserDir();
+		try {
+			assertFalse( run( userDir, new CountingCompetitor( TrainingCategory.SHORT, 3 ), false ) );
+			List< Path > journals = results( userDir, ".jsonl" );
+			assertEquals( 1, journals.size() );
+			assertTrue( journals.get( 0 ).getFileName().toString().endsWith( "-" + TrainingCategory.SHORT + ".jsonl" ) );
+			
+			List< JsonObject > interrupted = readJournal( journals.get( 0 ) );
+			assertEquals( 2, count( interrupted, "TESTING" ) );
+			// the time of the interrupted session is persisted with each instance:
+			assertEquals( 2, count( interrupted, "TESTING_TIME" ) );
+			
+			CountingCompetitor resumed = new CountingCompetitor( TrainingCategory.SHORT, -1 );
+			assertTrue( run( userDir, resumed, true ) );
+			assertEquals( NUM_TESTING - 2, resumed.numTested );
+			
+			JsonObject summary = readSummary( userDir );
+			assertEquals( NUM_TRAINING, summary.getAsJsonArray( "trainingResults" ).size() );
+			assertEquals( NUM_TESTING, summary.getAsJsonArray( "testingResults" ).size() );
+			
+			List< JsonObject > journal = readJournal( results( userDir, ".jsonl" ).get( 0 ) );
+			long testingTime = 0;
+			for( JsonObject r : journal )
+				if( r.get( "type" ).getAsString().equals( "TESTING_TIME" ) )
+					testingTime += r.get( "wallClockUsage" ).getAsLong();
+			assertEquals( 2 + ( NUM_TESTING - 2 ) + 1, count( journal, "TESTING_TIME" ) );
+			assertEquals( testingTime, summary.get( "testingWallClockUsage" ).getAsLong() );
+		}
+		finally {
+			deleteRecursively( userDir );
+		}
+	}
+	
+	/**
+	 * A partly written last line (as left by a crash mid-write) is discarded on resumption.
+	 */
+	
+	@Test
+	public void testResumeDiscardsTruncatedLastLine() throws IOException {
+		Path userDir = newUserDir();
+		try {
+			assertFalse( run( userDir, new CountingCompetitor( TrainingCategory.NONE, 3 ), false ) );
+			Path journal = results( userDir, ".jsonl" ).get( 0 );
+			Files.write( journal, "{\"type\":\"TESTING\",\"ind".getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+			
+			CountingCompetitor resumed = new CountingCompetitor( TrainingCategory.NONE, -1 );
+			assertTrue( run( userDir, resumed, true ) );
+			assertEquals( NUM_TESTING - 2, resumed.numTested );
+			assertEquals( NUM_TESTING, readSummary( userDir ).getAsJsonArray( "testingResults" ).size() );
+			
+			// every line of the completed journal is well-formed:
+			List< JsonObject > records = readJournal( results( userDir, ".jsonl" ).get( 0 ) );
+			assertEquals( NUM_TESTING, count( records, "TESTING" ) );
+		}
+		finally {
+			deleteRecursively( userDir );
+		}
+	}
+	
+	/**
+	 * A resumed run in one training category starts afresh, rather than failing on
+	 * (or taking over) the unfinished journal of another.
+	 */
+	
+	@Test
+	public void testJournalPerTrainingCategory() throws IOException {
+		Path userDir = newUserDir();
+		try {
+			assertFalse( run( userDir, new CountingCompetitor( TrainingCategory.LONG, 3 ), false ) );
+			
+			CountingCompetitor shortRun = new CountingCompetitor( TrainingCategory.SHORT, -1 );
+			assertTrue( run( userDir, shortRun, true ) );
+			assertEquals( NUM_TESTING, shortRun.numTested );
+			
+			// the LONG journal is untouched, so can still be resumed:
+			List< Path > journals = results( userDir, ".jsonl" );
+			assertEquals( 2, journals.size() );
+			CountingCompetitor longRun = new CountingCompetitor( TrainingCategory.LONG, -1 );
+			assertTrue( run( userDir, longRun, true ) );
+			assertEquals( NUM_TESTING - 2, longRun.numTested );
+		}
+		finally {
+			deleteRecursively( userDir );
+		}
+	}
+	
+	/**
+	 * A run whose journal is locked by another (here, by this test) writes a journal of its own.
+	 */
+	
+	@Test
+	public void testLockedJournalIsNotShared() throws IOException {
+		Path userDir = newUserDir();
+		try {
+			Path locked = resultsDir( userDir ).resolve( "CBBOC2016results-" + CountingCompetitor.class.getCanonicalName()
+				+ "-" + PROBLEM_CLASS + "-" + TrainingCategory.NONE + ".jsonl" );
+			FileChannel channel = FileChannel.open( locked, StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+			try {
+				FileLock lock = channel.lock();
+				assertTrue( run( userDir, new CountingCompetitor( TrainingCategory.NONE, -1 ), true ) );
+				assertEquals( 0, Files.size( locked ) );
+				lock.release();
+			}
+			finally {
+				channel.close();
+			}
+			
+			assertEquals( NUM_TESTING, readSummary( userDir ).getAsJsonArray( "testingResults" ).size() );
+		}
+		finally {
+			deleteRecursively( userDir );
+		}
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
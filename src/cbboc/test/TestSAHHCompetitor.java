@@ -0,0 +1,60 @@
+package cbboc.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import cbboc.ObjectiveFn;
+import cbboc.ProblemInstance;
+import cbboc.TrainingCategory;
+import cbboc.examples.SAHHCompetitor;
+
+//////////////////////////////////////////////////////////////////////
+
+public class TestSAHHCompetitor {
+	
+	private static final int NUM_TRAINING = 3;
+	
+	private static ProblemInstance sampleInstance() throws IOException {
+		String root = System.getProperty( "user.dir" );
+		String path = root + "/resources/sample2/testing/00000.txt";
+		return new ProblemInstance( new FileInputStream( new File( path ) ) );
+	}
+	
+	///////////////////////////////
+	
+	/**
+	 * With fewer than two training evaluations per instance, no walk can bound the
+	 * temperature: training must keep the default bounds rather than fail.
+	 */
+	
+	@Test
+	public void testTrainingWithTooFewEvaluations() throws IOException {
+		final ProblemInstance instance = sampleInstance();
+		for( long budget : new long [] { 0, NUM_TRAINING, 2 * NUM_TRAINING - 1 } ) {
+			for( SAHHCompetitor.Schedule schedule : SAHHCompetitor.Schedule.values() ) {
+				final AtomicLong sharedBudget = new AtomicLong( budget );
+				List< ObjectiveFn > trainingSet = new ArrayList< ObjectiveFn >();
+				for( int i=0; i<NUM_TRAINING; ++i )
+					trainingSet.add( new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, sharedBudget ) );
+				
+				SAHHCompetitor competitor = new SAHHCompetitor( TrainingCategory.SHORT, schedule );
+				competitor.train( trainingSet, Long.MAX_VALUE );
+				assertTrue( competitor.invariant() );
+				
+				final ObjectiveFn testCase = new ObjectiveFn( instance, ObjectiveFn.TimingMode.UNTIMED, new AtomicLong( 1000 ) );
+				competitor.test( testCase, Long.MAX_VALUE );
+				assertEquals( 0, testCase.getRemainingEvaluations() );
+			}
+		}
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,40 @@
+package cbboc.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Creates named daemon threads, so that background work never keeps the JVM alive.
+ */
+
+public final class DaemonThreadFactory implements ThreadFactory {
+
+	private final String namePrefix;
+	private final int priority;
+	private final AtomicInteger count = new AtomicInteger();
+	
+	///////////////////////////////
+	
+	public DaemonThreadFactory( String namePrefix ) {
+		this( namePrefix, Thread.NORM_PRIORITY );
+	}
+	
+	public DaemonThreadFactory( String namePrefix, int priority ) {
+		this.namePrefix = namePrefix;
+		this.priority = priority;
+	}
+	
+	///////////////////////////////
+	
+	@Override
+	public Thread newThread( Runnable r ) {
+		Thread result = new Thread( r, namePrefix + "-" + count.incrementAndGet() );
+		result.setDaemon( true );
+		result.setPriority( priority );
+		return result;
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -0,0 +1,102 @@
+package cbboc.util;
+
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Utilities for candidates packed 64 genes to a long: 
+ * gene i lives in bit ( i % 64 ) of word ( i / 64 ). 
+ * Unused high bits of the last word are kept clear.
+ */
+
+public final class PackedBits {
+
+	private PackedBits() {}
+	
+	///////////////////////////////
+	
+	public static int numWords( int numBits ) {
+		if( numBits < 0 )
+			throw new IllegalArgumentException( "Expected non-negative length, found:" + numBits );
+		
+		return ( numBits + 63 ) >>> 6;
+	}
+	
+	static long lastWordMask( int numBits ) {
+		return ( numBits & 63 ) == 0 ? -1L : ( 1L << numBits ) - 1;
+	}
+	
+	///////////////////////////////
+	
+	public static boolean get( long [] bits, int index ) {
+		return ( ( bits[ index >>> 6 ] >>> index ) & 1L ) != 0;
+	}
+
+	public static void set( long [] bits, int index, boolean value ) {
+		if( value )
+			bits[ index >>> 6 ] |= 1L << index;
+		else
+			bits[ index >>> 6 ] &= ~( 1L << index );
+	}
+	
+	public static void flip( long [] bits, int index ) {
+		bits[ index >>> 6 ] ^= 1L << index;
+	}
+	
+	public static void copyInto( long [] src, long [] dest ) {
+		if( src.length != dest.length )
+			throw new IllegalArgumentException( "destination of length " + src.length + " expected, found " + dest.length );
+		
+		System.arraycopy( src, 0, dest, 0, src.length );
+	}
+	
+	///////////////////////////////
+	
+	public static long [] randomBits( int numBits ) {
+		long [] result = new long [ numWords( numBits ) ];
+		randomise( result, numBits );
+		return result;
+	}
+	
+	public static void randomise( long [] bits, int numBits ) {
+		RNG.get().nextBits( bits, numBits );
+	}
+	
+	///////////////////////////////
+	
+	public static long [] fromBooleans( boolean [] candidate ) {
+		long [] result = new long [ numWords( candidate.length ) ];
+		fromBooleans( candidate, result );
+		return result;
+	}
+	
+	public static void fromBooleans( boolean [] candidate, long [] dest ) {
+		if( dest.length != numWords( candidate.length ) )
+			throw new IllegalArgumentException( "destination of length " + numWords( candidate.length ) + " expected, found " + dest.length );
+		
+		for( int w=0; w<dest.length; ++w ) {
+			final int base = w << 6;
+			final int end = Math.min( base + 64, candidate.length );
+			long word = 0L;
+			for( int i=base; i<end; ++i )
+				word |= ( candidate[ i ] ? 1L : 0L ) << i;
+			
+			dest[ w ] = word;
+		}
+	}
+	
+	public static boolean [] toBooleans( long [] bits, int numBits ) {
+		boolean [] result = new boolean [ numBits ];
+		toBooleans( bits, result );
+		return result;
+	}
+	
+	public static void toBooleans( long [] bits, boolean [] dest ) {
+		if( bits.length != numWords( dest.length ) )
+			throw new IllegalArgumentException( "array of length " + numWords( dest.length ) + " expected, found " + bits.length );
+		
+		for( int i=0; i<dest.length; ++i )
+			dest[ i ] = ( ( bits[ i >>> 6 ] >>> i ) & 1L ) != 0;
+	}
+}
+
+// End ///////////////////////////////////////////////////////////////
@@ -1,19 +1,215 @@
 package cbboc.util;
 
 import java.util.Random;
+import java.util.SplittableRandom;
 
-import org.apache.commons.math3.random.MersenneTwister;
-import org.apache.commons.math3.random.RandomAdaptor;
+//////////////////////////////////////////////////////////////////////
+
+/**
+ * Per-thread random number generators, all derived from a single root seed:
+ * the system property "cbboc.seed" if given, otherwise a fresh seed per JVM.
+ *
+ * get() returns the calling thread's generator, created on first use by splitting
+ * the root (so its stream depends on the order in which threads first call get()).
+ * For runs that must be reproducible regardless of thread scheduling, either hand
+ * each worker a generator obtained by split() from the caller's, or have each unit
+ * of work call reseedThread() with a run seed (see nextRunSeed()) and a stream number 
+ * of its own, as CBBOC does per instance.
+ *
+ * Generators are not synchronized and must not be shared between threads.
+ */
 
 public final class RNG {
 	
-	private static Random instance = new RandomAdaptor( new MersenneTwister() );
-	// ^ MersenneTwister is a much better quality RNG than the standard Java one.
+	/**
+	 * A java.util.Random backed by a SplittableRandom, with bulk fills using
+	 * 64 random bits at a time.
+	 */
+	
+	public static final class Generator extends Random {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private SplittableRandom source;
+		private int generation;
+		
+		///////////////////////////
+		
+		public Generator( long seed ) {
+			this( new SplittableRandom( seed ) );
+		}
+		
+		private Generator( SplittableRandom source ) {
+			super( 0L );
+			this.source = source;
+		}
+		
+		///////////////////////////
+		
+		/**
+		 * @return a new generator, statistically independent of this one, which advances this one.
+		 */
+		
+		public Generator split() { return new Generator( source.split() ); }
+		
+		@Override
+		public void setSeed( long seed ) {
+			// Also called by the Random constructor, before source is assigned:
+			super.setSeed( seed );
+			source = new SplittableRandom( seed );
+		}
+		
+		@Override
+		protected int next( int bits ) { return (int)( source.nextLong() >>> ( 64 - bits ) ); }
+		
+		@Override
+		public int nextInt() { return source.nextInt(); }
+		
+		@Override
+		public int nextInt( int bound ) { return source.nextInt( bound ); }
+		
+		@Override
+		public long nextLong() { return source.nextLong(); }
+		
+		@Override
+		public double nextDouble() { return source.nextDouble(); }
+		
+		@Override
+		public boolean nextBoolean() { return source.nextInt() < 0; }
+		
+		///////////////////////////
+		
+		/**
+		 * Sets every element of dest to a random boolean.
+		 */
+		
+		public void nextBooleans( boolean [] dest ) {
+			for( int base=0; base<dest.length; base += 64 ) {
+				long word = source.nextLong();
+				final int end = Math.min( base + 64, dest.length );
+				for( int i=base; i<end; ++i, word >>>= 1 )
+					dest[ i ] = ( word & 1L ) != 0;
+			}
+		}
+		
+		/**
+		 * Sets the first numBits bits of dest (as laid out by PackedBits) at random,
+		 * and clears the unused high bits of the last word.
+		 */
+		
+		public void nextBits( long [] dest, int numBits ) {
+			if( dest.length != PackedBits.numWords( numBits ) )
+				throw new IllegalArgumentException( "array of length " + PackedBits.numWords( numBits ) + " expected, found " + dest.length );
+			
+			for( int i=0; i<dest.length; ++i )
+				dest[ i ] = source.nextLong();
+			
+			if( dest.length > 0 )
+				dest[ dest.length - 1 ] &= PackedBits.lastWordMask( numBits );
+		}
+	}
+	
+	///////////////////////////////
+	
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	
+	private static long rootSeed;
+	private static boolean isExplicitlySeeded;
+	private static SplittableRandom root;
+	private static volatile int generation = 0;
+	
+	private static final ThreadLocal< Generator > perThread = new ThreadLocal< Generator >();
+	
+	static {
+		final Long seed = Long.getLong( "cbboc.seed" );
+		if( seed != null )
+			setSeed( seed );
+		else
+			reseedRandomly();
+	}
 	
 	///////////////////////////////
 	
-	public static Random get() { return instance; }
+	private RNG() {}
+	
+	/**
+	 * @return the calling thread's generator.
+	 */
+	
+	public static Generator get() {
+		Generator result = perThread.get();
+		if( result == null || result.generation != generation ) {
+			result = splitRoot();
+			perThread.set( result );
+		}
+		return result;
+	}
+	
+	private static synchronized Generator splitRoot() {
+		Generator result = new Generator( root.split() );
+		result.generation = generation;
+		return result;
+	}
+	
+	/**
+	 * Restarts every stream from seed: each thread's generator is re-derived on its next call to get(),
+	 * and nextRunSeed() returns seed from now on.
+	 */
+	
+	public static synchronized void setSeed( long seed ) {
+		restart( seed );
+		isExplicitlySeeded = true;
+	}
+	
+	/**
+	 * Restarts every stream from a fresh seed, with each call to nextRunSeed() returning 
+	 * a different seed from now on (as when "cbboc.seed" is not given).
+	 */
+	
+	public static synchronized void reseedRandomly() {
+		restart( new SplittableRandom().nextLong() );
+		isExplicitlySeeded = false;
+	}
+	
+	private static void restart( long seed ) {
+		rootSeed = seed;
+		root = new SplittableRandom( seed );
+		++generation;
+	}
+	
+	/**
+	 * @return the seed for the streams of a new run: the root seed if it was given explicitly 
+	 * (so that seeded runs repeat each other), otherwise a fresh seed drawn from the root 
+	 * (so that successive runs in the same JVM differ).
+	 */
+	
+	public static synchronized long nextRunSeed() {
+		return isExplicitlySeeded ? rootSeed : root.nextLong();
+	}
+	
+	/**
+	 * @return a seed which depends only on seed and streamId, and is (statistically) 
+	 * unrelated to that for any other streamId.
+	 */
+	
+	public static long deriveSeed( long seed, long streamId ) {
+		// The finaliser of SplitMix64:
+		long z = seed + GOLDEN_GAMMA * ( streamId + 1 );
+		z = ( z ^ ( z >>> 30 ) ) * 0xbf58476d1ce4e5b9L;
+		z = ( z ^ ( z >>> 27 ) ) * 0x94d049bb133111ebL;
+		return z ^ ( z >>> 31 );
+	}
+	
+	/**
+	 * Replaces the calling thread's generator with stream number streamId of runSeed,
+	 * which depends only on runSeed and streamId.
+	 */
+	
+	public static synchronized void reseedThread( long runSeed, long streamId ) {
+		Generator result = new Generator( deriveSeed( runSeed, streamId ) );
+		result.generation = generation;
+		perThread.set( result );
+	}
 }
 
 // End ///////////////////////////////////////////////////////////////
-